@@ -1,15 +1,21 @@
 package com.fivehundredpx.greedo_layout_sample;
 
 import android.content.Context;
-import android.graphics.BitmapFactory;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.fivehundredpx.greedolayout.GreedoImageHeaderReader;
+import com.fivehundredpx.greedolayout.GreedoImageSizeResolver;
 import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.SizeCalculatorDelegate;
+import com.fivehundredpx.greedolayout.Size;
 import com.squareup.picasso.Picasso;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+
 /**
  * Created by Julian Villella on 16-02-24.
  */
@@ -17,15 +23,13 @@ public class PhotosAdapter extends RecyclerView.Adapter<PhotosAdapter.PhotoViewH
     private static final int IMAGE_COUNT = 500; // number of images adapter will show
 
     private final int[] mImageResIds = Constants.IMAGES;
-    private final double[] mImageAspectRatios = new double[Constants.IMAGES.length];
+    private final GreedoImageSizeResolver mImageSizeResolver;
 
     private Context mContext;
 
     @Override
     public double aspectRatioForIndex(int index) {
-        // Precaution, have better handling for this in greedo-layout
-        if (index >= getItemCount()) return 1.0;
-        return mImageAspectRatios[getLoopedIndex(index)];
+        return mImageSizeResolver.aspectRatioForIndex(getLoopedIndex(index));
     }
 
     public class PhotoViewHolder extends RecyclerView.ViewHolder {
@@ -36,9 +40,15 @@ public class PhotosAdapter extends RecyclerView.Adapter<PhotosAdapter.PhotoViewH
         }
     }
 
-    public PhotosAdapter(Context context) {
+    /**
+     * @param executor Executor image sizes are resolved on, owned by the caller.
+     */
+    public PhotosAdapter(Context context, Executor executor) {
         mContext = context;
-        calculateImageAspectRatios();
+        mImageSizeResolver = new GreedoImageSizeResolver(new ResourceImageSource());
+
+        // Sizes the first layout needs before this is done are read on the spot
+        mImageSizeResolver.resolve(executor, null);
     }
 
     @Override
@@ -65,13 +75,27 @@ public class PhotosAdapter extends RecyclerView.Adapter<PhotosAdapter.PhotoViewH
         return IMAGE_COUNT;
     }
 
-    private void calculateImageAspectRatios() {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
+    // Reads image sizes from the headers of the bundled images, which never change so there's no
+    // point in caching them
+    private class ResourceImageSource implements GreedoImageSizeResolver.ImageSource {
+        @Override
+        public int getImageCount() {
+            return mImageResIds.length;
+        }
+
+        @Override
+        public String getCacheKey(int index) {
+            return null;
+        }
 
-        for (int i = 0; i < mImageResIds.length; i++) {
-            BitmapFactory.decodeResource(mContext.getResources(), mImageResIds[i], options);
-            mImageAspectRatios[i] = options.outWidth / (double) options.outHeight;
+        @Override
+        public Size readImageSize(int index) throws IOException {
+            InputStream stream = mContext.getResources().openRawResource(mImageResIds[index]);
+            try {
+                return GreedoImageHeaderReader.readSize(stream);
+            } finally {
+                stream.close();
+            }
         }
     }
 
@@ -7,15 +7,23 @@ import android.view.WindowManager;
 import android.widget.ToggleButton;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.fivehundredpx.greedolayout.GreedoLayoutManager;
+import com.fivehundredpx.greedolayout.GreedoSkeletonItemDecoration;
 import com.fivehundredpx.greedolayout.GreedoSpacingItemDecoration;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Created by Julian Villella on 16-02-24.
  */
 public class SampleActivity extends AppCompatActivity {
+    // Image sizes are resolved, and rows re-broken when switching modes, on these threads
+    private final ExecutorService mExecutor =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -27,7 +35,7 @@ public class SampleActivity extends AppCompatActivity {
                     WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
         }
 
-        PhotosAdapter photosAdapter = new PhotosAdapter(this);
+        PhotosAdapter photosAdapter = new PhotosAdapter(this, mExecutor);
         final GreedoLayoutManager layoutManager = new GreedoLayoutManager(photosAdapter);
         layoutManager.setMaxRowHeight(MeasUtils.dpToPx(150, this));
 
@@ -38,12 +46,24 @@ public class SampleActivity extends AppCompatActivity {
         int spacing = MeasUtils.dpToPx(4, this);
         recyclerView.addItemDecoration(new GreedoSpacingItemDecoration(spacing));
 
+        // Draw placeholders instead of binding views during fast flings
+        layoutManager.setSkeletonScrollThreshold(MeasUtils.dpToPx(100, this));
+        recyclerView.addItemDecoration(new GreedoSkeletonItemDecoration(
+                ContextCompat.getColor(this, R.color.pxPlaceholderGrey), spacing));
+
         findViewById(R.id.toggle_fixed_height).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                layoutManager.setFixedHeight(((ToggleButton) view).isChecked());
-                layoutManager.requestLayout();
+                boolean isFixedHeight = ((ToggleButton) view).isChecked();
+                layoutManager.setLayoutConfigurationAsync(
+                        layoutManager.getLayoutConfiguration().withFixedHeight(isFixedHeight), mExecutor);
             }
         });
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mExecutor.shutdown();
+    }
 }
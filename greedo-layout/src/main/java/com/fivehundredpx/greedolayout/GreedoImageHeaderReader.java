@@ -0,0 +1,344 @@
+package com.fivehundredpx.greedolayout;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads the size of an image straight from its header, without decoding it. Supports JPEG, PNG,
+ * WebP and GIF. JPEG sizes account for the EXIF orientation, so they are the size the image is
+ * displayed at.
+ *
+ * Only the start of the image is read: the first 30 bytes for PNG, WebP and GIF, and the
+ * segment headers up to the start of the frame for JPEG, whose other segments are skipped (seeked
+ * over for files). Channels and streams are read 4 KB at a time.
+ */
+public final class GreedoImageHeaderReader {
+    // Enough bytes to tell the formats apart, and to hold the size of every format but JPEG
+    private static final int SIGNATURE_SIZE = 30;
+
+    // Orientation is near the start of the EXIF data, there's no need to read its thumbnail
+    private static final int EXIF_READ_LIMIT = 4 * 1024;
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int ORIENTATION_NORMAL = 1;
+
+    private static final byte[] PNG_SIGNATURE = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+
+    private GreedoImageHeaderReader() {
+    }
+
+    /**
+     * Returns the size of the given image file, or null if it isn't in a supported format.
+     */
+    public static Size readSize(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            return readSize(stream.getChannel());
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the size of the image held by the remaining bytes of the given buffer, or null if it
+     * isn't in a supported format. The position of the buffer is left untouched.
+     */
+    public static Size readSize(ByteBuffer buffer) throws IOException {
+        return readSize(new BufferInput(buffer.duplicate()));
+    }
+
+    /**
+     * Returns the size of the image read from the given stream, or null if it isn't in a supported
+     * format. The stream is left open, positioned somewhere in the image.
+     */
+    public static Size readSize(InputStream stream) throws IOException {
+        return readSize(Channels.newChannel(stream));
+    }
+
+    /**
+     * Returns the size of the image read from the given channel, or null if it isn't in a
+     * supported format. The channel is left open, positioned somewhere in the image.
+     */
+    public static Size readSize(ReadableByteChannel channel) throws IOException {
+        return readSize(new ChannelInput(channel));
+    }
+
+    private static Size readSize(HeaderInput input) throws IOException {
+        ByteBuffer start = input.read(2);
+        if (start.remaining() == 2 && (start.get(0) & 0xFF) == 0xFF && (start.get(1) & 0xFF) == 0xD8) {
+            return readJpegSize(input);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(SIGNATURE_SIZE);
+        header.put(start);
+        header.put(input.read(SIGNATURE_SIZE - header.position()));
+        header.flip();
+
+        if (isPng(header)) {
+            return readPngSize(header);
+        } else if (isGif(header)) {
+            return readGifSize(header);
+        } else if (isWebp(header)) {
+            return readWebpSize(header);
+        }
+        return null;
+    }
+
+    //region PNG, GIF and WebP
+    private static boolean isPng(ByteBuffer header) {
+        if (header.limit() < 24) return false;
+
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (header.get(i) != PNG_SIGNATURE[i]) return false;
+        }
+        return matches(header, 12, "IHDR");
+    }
+
+    private static Size readPngSize(ByteBuffer header) {
+        header.order(ByteOrder.BIG_ENDIAN);
+        return new Size(header.getInt(16), header.getInt(20));
+    }
+
+    private static boolean isGif(ByteBuffer header) {
+        return header.limit() >= 10 && (matches(header, 0, "GIF87a") || matches(header, 0, "GIF89a"));
+    }
+
+    private static Size readGifSize(ByteBuffer header) {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        return new Size(header.getShort(6) & 0xFFFF, header.getShort(8) & 0xFFFF);
+    }
+
+    private static boolean isWebp(ByteBuffer header) {
+        return header.limit() >= 16 && matches(header, 0, "RIFF") && matches(header, 8, "WEBP");
+    }
+
+    private static Size readWebpSize(ByteBuffer header) {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (matches(header, 12, "VP8 ") && header.limit() >= 30) { // Lossy
+            boolean hasStartCode = (header.get(23) & 0xFF) == 0x9D
+                    && (header.get(24) & 0xFF) == 0x01 && (header.get(25) & 0xFF) == 0x2A;
+            if (!hasStartCode) return null;
+
+            return new Size(header.getShort(26) & 0x3FFF, header.getShort(28) & 0x3FFF);
+        } else if (matches(header, 12, "VP8L") && header.limit() >= 25) { // Lossless
+            if ((header.get(20) & 0xFF) != 0x2F) return null;
+
+            int bits = header.getInt(21);
+            return new Size((bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1);
+        } else if (matches(header, 12, "VP8X") && header.limit() >= 30) { // Extended
+            return new Size(readUnsignedInt24(header, 24) + 1, readUnsignedInt24(header, 27) + 1);
+        }
+        return null;
+    }
+    //endregion
+
+    //region JPEG
+    // Walks the segments until the start of the frame, which holds the size. The EXIF segment, if
+    // any, comes before it.
+    private static Size readJpegSize(HeaderInput input) throws IOException {
+        int orientation = ORIENTATION_NORMAL;
+
+        while (true) {
+            if (readUnsignedByte(input) != 0xFF) return null;
+
+            // Markers can be padded with any number of fill bytes
+            int marker;
+            do {
+                marker = readUnsignedByte(input);
+            } while (marker == 0xFF);
+
+            // Reached the end of the image, or its data, without finding a frame
+            if (marker == 0xD9 || marker == 0xDA) return null;
+
+            // Markers without a segment
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue;
+
+            int length = (input.readFully(2).getShort(0) & 0xFFFF) - 2;
+            if (length < 0) return null;
+
+            if (isStartOfFrame(marker)) {
+                ByteBuffer frame = input.readFully(5);
+                int height = frame.getShort(1) & 0xFFFF;
+                int width = frame.getShort(3) & 0xFFFF;
+                return isOrientationTransposed(orientation) ? new Size(height, width) : new Size(width, height);
+            } else if (marker == 0xE1) { // APP1, which holds EXIF data (or XMP)
+                int readLength = Math.min(length, EXIF_READ_LIMIT);
+                ByteBuffer segment = input.readFully(readLength);
+                input.skip(length - readLength);
+
+                if (matches(segment, 0, "Exif\0\0")) {
+                    orientation = readExifOrientation(segment);
+                }
+            } else {
+                input.skip(length);
+            }
+        }
+    }
+
+    // Every SOFn marker but DHT (C4), JPG (C8) and DAC (CC), which share the range
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    // Orientations 5 to 8 rotate the image by 90 or 270 degrees
+    private static boolean isOrientationTransposed(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    // Looks the orientation tag up in the first IFD of the EXIF data that follows the "Exif\0\0"
+    // header. Anything out of bounds means there's no orientation we can trust.
+    private static int readExifOrientation(ByteBuffer segment) {
+        ByteBuffer tiff = ((ByteBuffer) segment.position(6)).slice();
+        if (tiff.limit() < 8) return ORIENTATION_NORMAL;
+
+        if (matches(tiff, 0, "II")) {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (matches(tiff, 0, "MM")) {
+            tiff.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return ORIENTATION_NORMAL;
+        }
+
+        int ifdOffset = tiff.getInt(4);
+        if (ifdOffset < 8 || ifdOffset > tiff.limit() - 2) return ORIENTATION_NORMAL;
+
+        int entryCount = tiff.getShort(ifdOffset) & 0xFFFF;
+        for (int i = 0; i < entryCount; i++) {
+            int entryOffset = ifdOffset + 2 + 12 * i;
+            if (entryOffset + 12 > tiff.limit()) break;
+
+            if ((tiff.getShort(entryOffset) & 0xFFFF) == EXIF_ORIENTATION_TAG) {
+                return tiff.getShort(entryOffset + 8) & 0xFFFF;
+            }
+        }
+        return ORIENTATION_NORMAL;
+    }
+    //endregion
+
+    private static boolean matches(ByteBuffer buffer, int offset, String ascii) {
+        if (offset + ascii.length() > buffer.limit()) return false;
+
+        for (int i = 0; i < ascii.length(); i++) {
+            if (buffer.get(offset + i) != (byte) ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int readUnsignedInt24(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0xFF)
+                | (buffer.get(offset + 1) & 0xFF) << 8
+                | (buffer.get(offset + 2) & 0xFF) << 16;
+    }
+
+    private static int readUnsignedByte(HeaderInput input) throws IOException {
+        return input.readFully(1).get(0) & 0xFF;
+    }
+
+    // Forward only source of bytes, which is all the formats need
+    private static abstract class HeaderInput {
+        // Returns up to the given number of bytes, less only once the end of the input is reached
+        abstract ByteBuffer read(int count) throws IOException;
+
+        abstract void skip(long count) throws IOException;
+
+        ByteBuffer readFully(int count) throws IOException {
+            ByteBuffer buffer = read(count);
+            if (buffer.remaining() < count) {
+                throw new EOFException(String.format(
+                        "Image header is truncated, needed %d bytes but only %d were left", count, buffer.remaining()));
+            }
+            return buffer;
+        }
+    }
+
+    private static class BufferInput extends HeaderInput {
+        private final ByteBuffer mBuffer;
+
+        BufferInput(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        ByteBuffer read(int count) {
+            ByteBuffer slice = mBuffer.slice();
+            slice.limit(Math.min(count, slice.limit()));
+            mBuffer.position(mBuffer.position() + slice.limit());
+            return slice;
+        }
+
+        @Override
+        void skip(long count) {
+            mBuffer.position((int) Math.min(mBuffer.limit(), mBuffer.position() + count));
+        }
+    }
+
+    // Reads the channel a buffer at a time, JPEG segment headers are read a few bytes at a time
+    // and would otherwise cost a read each
+    private static class ChannelInput extends HeaderInput {
+        private static final int BUFFER_SIZE = 4 * 1024;
+
+        private final ReadableByteChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ChannelInput(ReadableByteChannel channel) {
+            mChannel = channel;
+            mBuffer.limit(0);
+        }
+
+        @Override
+        ByteBuffer read(int count) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(count);
+            while (buffer.hasRemaining() && (mBuffer.hasRemaining() || fill())) {
+                int length = Math.min(buffer.remaining(), mBuffer.remaining());
+                ByteBuffer slice = mBuffer.slice();
+                slice.limit(length);
+                buffer.put(slice);
+                mBuffer.position(mBuffer.position() + length);
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        void skip(long count) throws IOException {
+            int buffered = (int) Math.min(count, mBuffer.remaining());
+            mBuffer.position(mBuffer.position() + buffered);
+            count -= buffered;
+
+            // Files can seek past the bytes, other channels have to read through them
+            if (count > 0 && mChannel instanceof FileChannel) {
+                FileChannel fileChannel = (FileChannel) mChannel;
+                fileChannel.position(fileChannel.position() + count);
+                return;
+            }
+
+            while (count > 0 && fill()) {
+                int length = (int) Math.min(count, mBuffer.remaining());
+                mBuffer.position(length);
+                count -= length;
+            }
+        }
+
+        // Refills the empty buffer, returns false once the end of the channel is reached
+        private boolean fill() throws IOException {
+            mBuffer.clear();
+            int read;
+            do {
+                read = mChannel.read(mBuffer);
+            } while (read == 0);
+            mBuffer.flip();
+            return read > 0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.fivehundredpx.greedolayout;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persists image sizes across launches, so that a {@link GreedoImageSizeResolver} doesn't read
+ * the header of every image again on each cold start. Sizes are keyed by a string that has to
+ * change whenever the image does, such as its path along with its length and modification time.
+ *
+ * The file is loaded by {@link #load()}, or else the first time a size is looked up, and only
+ * written by {@link #save()}. This class is thread safe.
+ */
+public class GreedoImageSizeCache {
+    private static final String TAG = GreedoImageSizeCache.class.getSimpleName();
+
+    private static final int MAGIC = 0x47534943; // "GSIC"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File mFile;
+    private final Map<String, Size> mSizes = new HashMap<>();
+
+    // Volatile so it can be checked without waiting for a load in progress
+    private volatile boolean mIsLoaded;
+
+    // Flag to indicate sizes were added since the file was last loaded or saved
+    private boolean mIsDirty;
+
+    // Held while writing the file, so saves don't overlap without blocking lookups
+    private final Object mSaveLock = new Object();
+
+    /**
+     * @param file File the sizes are stored in, its parent directory must exist.
+     */
+    public GreedoImageSizeCache(File file) {
+        mFile = file;
+    }
+
+    public synchronized Size get(String key) {
+        ensureLoaded();
+        return mSizes.get(key);
+    }
+
+    public synchronized void put(String key, Size size) {
+        ensureLoaded();
+        mSizes.put(key, size);
+        mIsDirty = true;
+    }
+
+    /**
+     * Load the file now if it isn't loaded yet, typically off the main thread.
+     */
+    public synchronized void load() {
+        ensureLoaded();
+    }
+
+    /**
+     * Returns true once the file is loaded, lookups won't block on reading it from then on.
+     */
+    public boolean isLoaded() {
+        return mIsLoaded;
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return mSizes.size();
+    }
+
+    public synchronized void clear() {
+        mSizes.clear();
+        mIsLoaded = true;
+        mIsDirty = true;
+    }
+
+    /**
+     * Write the sizes to the file, if any were added since it was last loaded or saved. The file is
+     * replaced in one step, so a crash half way through leaves the previous sizes in place. Sizes
+     * can be looked up and added while the file is being written.
+     */
+    public void save() throws IOException {
+        synchronized (mSaveLock) {
+            Map<String, Size> sizes;
+            synchronized (this) {
+                if (!mIsDirty) return;
+
+                sizes = new HashMap<>(mSizes);
+                mIsDirty = false;
+            }
+
+            boolean isSaved = false;
+            try {
+                writeFile(sizes);
+                isSaved = true;
+            } finally {
+                if (!isSaved) {
+                    synchronized (this) {
+                        mIsDirty = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeFile(Map<String, Size> sizes) throws IOException {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(sizes.size());
+            for (Map.Entry<String, Size> entry : sizes.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeInt(entry.getValue().getWidth());
+                output.writeInt(entry.getValue().getHeight());
+            }
+        } finally {
+            output.close();
+        }
+
+        if (!tempFile.renameTo(mFile)) {
+            throw new IOException(String.format("Could not replace %s", mFile));
+        }
+    }
+
+    // Loads the file the first time it's needed. A missing or unreadable file leaves the cache
+    // empty, it gets rewritten on the next save.
+    private void ensureLoaded() {
+        if (mIsLoaded) return;
+
+        try {
+            readFile();
+        } finally {
+            mIsLoaded = true;
+        }
+    }
+
+    private void readFile() {
+        DataInputStream input;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        } catch (FileNotFoundException e) {
+            return;
+        }
+
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                Log.w(TAG, String.format("%s is not an image size cache, ignoring it", mFile));
+                return;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = input.readUTF();
+                mSizes.put(key, new Size(input.readInt(), input.readInt()));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, String.format("Could not load %s, ignoring it", mFile), e);
+            mSizes.clear();
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Nothing left to read from it anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.fivehundredpx.greedolayout;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.SizeCalculatorDelegate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Size calculator delegate that gets the aspect ratio of each image from the image itself, reading
+ * only its header with {@link GreedoImageHeaderReader}. Sizes can be resolved ahead of time in
+ * parallel with {@link #resolve(Executor, int, OnSizesResolvedListener)}. Any size the calculator
+ * needs before then is read right away, on the calling thread.
+ *
+ * Sizes are kept in a {@link GreedoImageSizeCache} when one is given, so images only have their
+ * header read once. The cache is loaded and saved on the executor given to {@code resolve}, sizes
+ * needed before it's loaded are read without it rather than waiting for it.
+ */
+public class GreedoImageSizeResolver implements SizeCalculatorDelegate {
+    private static final String TAG = GreedoImageSizeResolver.class.getSimpleName();
+
+    // Aspect ratio of the images whose size couldn't be read
+    public static final double DEFAULT_ASPECT_RATIO = 1.0;
+
+    // Marks images whose size couldn't be read, so that they aren't read over and over
+    private static final Size UNKNOWN_SIZE = new Size(0, 0);
+
+    /**
+     * The images to resolve the sizes of, by index.
+     */
+    public interface ImageSource {
+        int getImageCount();
+
+        /**
+         * Returns the key the size of the given image is cached with, which has to change whenever
+         * the image does. Return null to not cache it.
+         */
+        String getCacheKey(int index);
+
+        /**
+         * Returns the size of the given image, or null if it can't be known. Typically implemented
+         * with one of the {@link GreedoImageHeaderReader} methods. May be called from any thread.
+         */
+        Size readImageSize(int index) throws IOException;
+    }
+
+    public interface OnSizesResolvedListener {
+        /**
+         * Called on the main thread once the size of every image has been resolved.
+         */
+        void onSizesResolved();
+    }
+
+    private final ImageSource mImageSource;
+    private final GreedoImageSizeCache mSizeCache;
+    private final AtomicReferenceArray<Size> mSizes;
+
+    // Executor of the last resolve(), sizes cached after it's done are saved on it
+    private volatile Executor mExecutor;
+    private volatile boolean mIsResolveDone;
+    private final AtomicBoolean mIsSaveScheduled = new AtomicBoolean(false);
+
+    /**
+     * Returns a source for the given image files, cached by path, length and modification time.
+     * The key of each file is only computed once, like its size, so files changed afterwards need
+     * a new source and resolver.
+     */
+    public static ImageSource fileSource(List<File> files) {
+        final List<File> imageFiles = new ArrayList<>(files);
+        final AtomicReferenceArray<String> cacheKeys = new AtomicReferenceArray<>(imageFiles.size());
+        return new ImageSource() {
+            @Override
+            public int getImageCount() {
+                return imageFiles.size();
+            }
+
+            @Override
+            public String getCacheKey(int index) {
+                // Computing the same key on two threads at once is harmless, both get the same one
+                String cacheKey = cacheKeys.get(index);
+                if (cacheKey == null) {
+                    File file = imageFiles.get(index);
+                    cacheKey = file.getPath() + ':' + file.length() + ':' + file.lastModified();
+                    cacheKeys.set(index, cacheKey);
+                }
+                return cacheKey;
+            }
+
+            @Override
+            public Size readImageSize(int index) throws IOException {
+                return GreedoImageHeaderReader.readSize(imageFiles.get(index));
+            }
+        };
+    }
+
+    public GreedoImageSizeResolver(ImageSource imageSource) {
+        this(imageSource, null);
+    }
+
+    /**
+     * @param imageSource The images to resolve the sizes of.
+     * @param sizeCache Cache to look sizes up in before reading them, and to add them to, or null.
+     */
+    public GreedoImageSizeResolver(ImageSource imageSource, GreedoImageSizeCache sizeCache) {
+        mImageSource = imageSource;
+        mSizeCache = sizeCache;
+        mSizes = new AtomicReferenceArray<>(imageSource.getImageCount());
+    }
+
+    /**
+     * Resolve the size of every image on the given executor, split over as many tasks as there are
+     * processors. See {@link #resolve(Executor, int, OnSizesResolvedListener)}.
+     */
+    public void resolve(Executor executor, OnSizesResolvedListener listener) {
+        resolve(executor, Runtime.getRuntime().availableProcessors(), listener);
+    }
+
+    /**
+     * Resolve the size of every image on the given executor. Images are handed out to the tasks
+     * one at a time, so slow images don't hold up the rest. The size cache, if any, is loaded first
+     * and saved once every size is resolved, then again whenever sizes are added to it later.
+     *
+     * @param executor Executor the tasks run on.
+     * @param parallelism Number of tasks to split the work over.
+     * @param listener Listener notified once every size is resolved, or null.
+     */
+    public void resolve(Executor executor, int parallelism, final OnSizesResolvedListener listener) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be greater than 0");
+        }
+
+        mExecutor = executor;
+        mIsResolveDone = false;
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        final AtomicInteger nextIndex = new AtomicInteger(0);
+        final AtomicInteger remainingTaskCount = new AtomicInteger(parallelism);
+
+        for (int i = 0; i < parallelism; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // The first task loads the cache, the others wait for it
+                    if (mSizeCache != null) {
+                        mSizeCache.load();
+                    }
+
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < mSizes.length()) {
+                        resolveAndCacheSize(index);
+                    }
+
+                    // The last task to finish wraps up, sizes cached from now on get saved again
+                    if (remainingTaskCount.decrementAndGet() == 0) {
+                        mIsResolveDone = true;
+                        saveSizeCache();
+                        if (listener != null) {
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    listener.onSizesResolved();
+                                }
+                            });
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    public boolean isResolved(int index) {
+        return mSizes.get(index) != null;
+    }
+
+    /**
+     * Returns the size of the given image, reading it right away if it hasn't been resolved yet,
+     * or null if it can't be known.
+     */
+    public Size getImageSize(int index) {
+        Size size = resolveSize(index);
+        return size == UNKNOWN_SIZE ? null : size;
+    }
+
+    @Override
+    public double aspectRatioForIndex(int index) {
+        Size size = resolveSize(index);
+        if (size.getWidth() <= 0 || size.getHeight() <= 0) {
+            return DEFAULT_ASPECT_RATIO;
+        }
+        return size.getWidth() / (double) size.getHeight();
+    }
+
+    // Resolving the same image on two threads at once is harmless, both come up with the same size
+    private Size resolveSize(int index) {
+        Size size = mSizes.get(index);
+        if (size != null) return size;
+
+        boolean useCache = mSizeCache != null && mSizeCache.isLoaded();
+        String cacheKey = useCache ? mImageSource.getCacheKey(index) : null;
+        if (cacheKey != null) {
+            size = mSizeCache.get(cacheKey);
+        }
+
+        if (size == null) {
+            try {
+                size = mImageSource.readImageSize(index);
+            } catch (IOException e) {
+                Log.w(TAG, String.format("Could not read the size of image %d", index), e);
+            }
+
+            if (size == null) {
+                size = UNKNOWN_SIZE;
+            } else if (cacheKey != null) {
+                mSizeCache.put(cacheKey, size);
+                scheduleSave();
+            }
+        }
+
+        mSizes.set(index, size);
+        return size;
+    }
+
+    // Sizes read before the cache was loaded skipped it, they're added to it here
+    private void resolveAndCacheSize(int index) {
+        Size size = mSizes.get(index);
+        if (size == null) {
+            resolveSize(index);
+            return;
+        }
+
+        if (mSizeCache == null || size == UNKNOWN_SIZE) return;
+
+        String cacheKey = mImageSource.getCacheKey(index);
+        if (cacheKey != null && mSizeCache.get(cacheKey) == null) {
+            mSizeCache.put(cacheKey, size);
+        }
+    }
+
+    // Saves sizes cached after resolve() is done, at most one save is queued at a time
+    private void scheduleSave() {
+        if (!mIsResolveDone || !mIsSaveScheduled.compareAndSet(false, true)) return;
+
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mIsSaveScheduled.set(false);
+                    saveSizeCache();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The executor was shut down, the sizes are saved along with the next resolve()
+            mIsSaveScheduled.set(false);
+        }
+    }
+
+    private void saveSizeCache() {
+        if (mSizeCache == null) return;
+
+        try {
+            mSizeCache.save();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save the image size cache", e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.fivehundredpx.greedolayout;
+
+import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.TailRowPolicy;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of the settings rows are broken with. Applying one to a
+ * {@link GreedoLayoutManager} changes them all at once, so rows are only recomputed once, and can
+ * be done off the main thread, see
+ * {@link GreedoLayoutManager#setLayoutConfigurationAsync(GreedoLayoutConfiguration, java.util.concurrent.Executor)}.
+ *
+ * Use the {@code with} methods to derive a configuration with one setting changed.
+ */
+public final class GreedoLayoutConfiguration {
+    private final int mMaxRowHeight;
+    private final boolean mIsFixedHeight;
+    private final int[] mRowHeightBuckets;
+    private final TailRowPolicy mTailRowPolicy;
+
+    /**
+     * Create a configuration with the given max row height and mode, no row height buckets and a
+     * {@link TailRowPolicy#NATURAL} tail row.
+     */
+    public GreedoLayoutConfiguration(int maxRowHeight, boolean fixedHeight) {
+        this(maxRowHeight, fixedHeight, new int[0], TailRowPolicy.NATURAL);
+    }
+
+    private GreedoLayoutConfiguration(int maxRowHeight, boolean fixedHeight, int[] rowHeightBuckets,
+                                      TailRowPolicy tailRowPolicy) {
+        if (maxRowHeight <= 0) {
+            throw new IllegalArgumentException("Max row height must be greater than 0");
+        }
+
+        if (tailRowPolicy == null) {
+            throw new IllegalArgumentException("Tail row policy must not be null");
+        }
+
+        mMaxRowHeight = maxRowHeight;
+        mIsFixedHeight = fixedHeight;
+        mRowHeightBuckets = rowHeightBuckets;
+        mTailRowPolicy = tailRowPolicy;
+    }
+
+    public int getMaxRowHeight() {
+        return mMaxRowHeight;
+    }
+
+    public boolean isFixedHeight() {
+        return mIsFixedHeight;
+    }
+
+    public int[] getRowHeightBuckets() {
+        return mRowHeightBuckets.clone();
+    }
+
+    public TailRowPolicy getTailRowPolicy() {
+        return mTailRowPolicy;
+    }
+
+    public GreedoLayoutConfiguration withMaxRowHeight(int maxRowHeight) {
+        return new GreedoLayoutConfiguration(maxRowHeight, mIsFixedHeight, mRowHeightBuckets, mTailRowPolicy);
+    }
+
+    public GreedoLayoutConfiguration withFixedHeight(boolean fixedHeight) {
+        return new GreedoLayoutConfiguration(mMaxRowHeight, fixedHeight, mRowHeightBuckets, mTailRowPolicy);
+    }
+
+    /**
+     * See {@link GreedoLayoutSizeCalculator#setRowHeightBuckets(int...)}.
+     */
+    public GreedoLayoutConfiguration withRowHeightBuckets(int... rowHeightBuckets) {
+        int[] buckets = rowHeightBuckets == null ? new int[0] : rowHeightBuckets.clone();
+        Arrays.sort(buckets);
+        if (buckets.length > 0 && buckets[0] <= 0) {
+            throw new IllegalArgumentException("Row height buckets must be greater than 0");
+        }
+
+        return new GreedoLayoutConfiguration(mMaxRowHeight, mIsFixedHeight, buckets, mTailRowPolicy);
+    }
+
+    public GreedoLayoutConfiguration withTailRowPolicy(TailRowPolicy tailRowPolicy) {
+        return new GreedoLayoutConfiguration(mMaxRowHeight, mIsFixedHeight, mRowHeightBuckets, tailRowPolicy);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GreedoLayoutConfiguration)) return false;
+
+        GreedoLayoutConfiguration other = (GreedoLayoutConfiguration) o;
+        return mMaxRowHeight == other.mMaxRowHeight
+                && mIsFixedHeight == other.mIsFixedHeight
+                && Arrays.equals(mRowHeightBuckets, other.mRowHeightBuckets)
+                && mTailRowPolicy == other.mTailRowPolicy;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mMaxRowHeight;
+        result = 31 * result + (mIsFixedHeight ? 1 : 0);
+        result = 31 * result + Arrays.hashCode(mRowHeightBuckets);
+        result = 31 * result + mTailRowPolicy.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(maxRowHeight=%d, fixedHeight=%b, rowHeightBuckets=%s, tailRowPolicy=%s)",
+                GreedoLayoutConfiguration.class.getSimpleName(), mMaxRowHeight, mIsFixedHeight,
+                Arrays.toString(mRowHeightBuckets), mTailRowPolicy);
+    }
+}
@@ -0,0 +1,406 @@
+package com.fivehundredpx.greedolayout;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persists the rows computed by a {@link GreedoLayoutSizeCalculator} in a memory-mapped file, so
+ * that large, mostly static data sets don't have their rows recomputed on every cold start. Rows
+ * are read lazily as the calculator needs them, and appended as new rows are computed.
+ *
+ * The cached rows are trusted for as long as the data set version matches, so the version passed
+ * to {@link #open(File, long)} must change whenever the content of the data set does. Adapter
+ * changes reported to the calculator drop the affected rows as well. A cache file holds the rows of
+ * a single configuration (content width, max row height and mode); switching to another one clears
+ * it.
+ *
+ * The rows are followed by an index of where each row ends, in bytes and in child positions, so
+ * rows are looked up and truncated with a binary search instead of walking the rows before them.
+ * Appending or dropping rows overwrites the index, it's written again by {@link #flush()} and
+ * {@link #close()}. Without a valid index, rows are walked from the start as they're needed.
+ *
+ * File layout, all values are big endian ints unless noted otherwise:
+ * <pre>
+ *   header: magic, format version, data set version (long), content width, max row height,
+ *           layout mode, row count, end of row data, indexed row count (-1 if no index),
+ *           header checksum
+ *   row:    child count, row height, child widths..., row checksum
+ *   index:  end offset of each row..., end position of each row..., index checksum
+ * </pre>
+ */
+public class GreedoLayoutDiskCache implements Closeable {
+    private static final String TAG = GreedoLayoutDiskCache.class.getSimpleName();
+
+    private static final int MAGIC = 0x47524544; // "GRED"
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_FORMAT_VERSION = 4;
+    private static final int OFFSET_DATASET_VERSION = 8;
+    private static final int OFFSET_CONTENT_WIDTH = 16;
+    private static final int OFFSET_MAX_ROW_HEIGHT = 20;
+    private static final int OFFSET_LAYOUT_MODE = 24;
+    private static final int OFFSET_ROW_COUNT = 28;
+    private static final int OFFSET_DATA_END = 32;
+    private static final int OFFSET_INDEXED_ROW_COUNT = 36;
+    private static final int OFFSET_HEADER_CHECKSUM = 40;
+    private static final int HEADER_SIZE = 44;
+
+    private static final int NO_INDEX = -1;
+
+    // Child count, row height and checksum, on top of one width per child
+    private static final int ROW_OVERHEAD_SIZE = 12;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mDatasetVersion;
+    private MappedByteBuffer mBuffer;
+
+    private int mContentWidth;
+    private int mMaxRowHeight;
+    private int mLayoutMode;
+    private int mRowCount;
+    private int mDataEnd;
+
+    // Byte offset and first child position of each row, known for the first mKnownRowStartCount
+    // rows. The entry past the last row is where the next row goes. Loaded from the index, or
+    // filled in by walking the rows when there's none.
+    private int[] mRowOffsets = new int[64];
+    private int[] mRowFirstPositions = new int[64];
+    private int mKnownRowStartCount;
+
+    // Flag to indicate the index following the rows is up to date
+    private boolean mIsIndexWritten;
+
+    // Flag set once the file can't be written anymore, the cache then behaves as if it were empty
+    private boolean mIsBroken;
+
+    /**
+     * Open (or create) the cache file for the given version of a data set. An existing file is
+     * reused if it was written for the same data set version and isn't corrupt, otherwise it's
+     * cleared.
+     *
+     * @param file File to map, its parent directory must exist.
+     * @param datasetVersion Version of the data set, change it whenever the content changes.
+     */
+    public static GreedoLayoutDiskCache open(File file, long datasetVersion) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            return new GreedoLayoutDiskCache(randomAccessFile, datasetVersion);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    private GreedoLayoutDiskCache(RandomAccessFile file, long datasetVersion) throws IOException {
+        mFile = file;
+        mChannel = file.getChannel();
+        mDatasetVersion = datasetVersion;
+
+        long fileSize = mChannel.size();
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(INITIAL_CAPACITY, Math.min(fileSize, Integer.MAX_VALUE)));
+
+        if (fileSize >= HEADER_SIZE && hasValidHeader()) {
+            mContentWidth = mBuffer.getInt(OFFSET_CONTENT_WIDTH);
+            mMaxRowHeight = mBuffer.getInt(OFFSET_MAX_ROW_HEIGHT);
+            mLayoutMode = mBuffer.getInt(OFFSET_LAYOUT_MODE);
+            mRowCount = mBuffer.getInt(OFFSET_ROW_COUNT);
+            mDataEnd = mBuffer.getInt(OFFSET_DATA_END);
+
+            mRowOffsets[0] = HEADER_SIZE;
+            mKnownRowStartCount = 1;
+            mIsIndexWritten = mBuffer.getInt(OFFSET_INDEXED_ROW_COUNT) == mRowCount && readIndex();
+        } else {
+            mContentWidth = -1;
+            mMaxRowHeight = -1;
+            mLayoutMode = -1;
+            mRowCount = 0;
+            mDataEnd = HEADER_SIZE;
+            mRowOffsets[0] = HEADER_SIZE;
+            mKnownRowStartCount = 1;
+            writeHeader();
+        }
+    }
+
+    public long getDatasetVersion() {
+        return mDatasetVersion;
+    }
+
+    /**
+     * Returns the number of rows stored in the cache.
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Drop every stored row.
+     */
+    public void clear() {
+        truncate(0);
+    }
+
+    /**
+     * Write the index and any pending changes to the file.
+     */
+    public void flush() {
+        writeIndex();
+        mBuffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        mChannel.close();
+        mFile.close();
+    }
+
+    // Makes sure the stored rows were computed with the given configuration, clearing them if not
+    void bind(int contentWidth, int maxRowHeight, int layoutMode) {
+        if (mContentWidth == contentWidth && mMaxRowHeight == maxRowHeight && mLayoutMode == layoutMode) {
+            return;
+        }
+
+        mContentWidth = contentWidth;
+        mMaxRowHeight = maxRowHeight;
+        mLayoutMode = layoutMode;
+        truncate(0);
+    }
+
+    // Returns the sizes of the children in the given row, or null if the row isn't stored. A row
+    // that fails its checksum is dropped along with every row after it.
+    Size[] readRow(int row) {
+        if (mIsBroken || row >= mRowCount) return null;
+
+        // Finding the next row checks this row's child count against the stored data first
+        int nextOffset = rowOffset(row + 1);
+        if (nextOffset < 0) return null;
+
+        int offset = mRowOffsets[row];
+        int childCount = mRowFirstPositions[row + 1] - mRowFirstPositions[row];
+        int recordSize = nextOffset - offset;
+        if (mBuffer.getInt(offset) != childCount
+                || checksum(offset, recordSize - 4) != mBuffer.getInt(offset + recordSize - 4)) {
+            Log.w(TAG, String.format("Row %d is corrupt, dropping it and every row after it", row));
+            truncate(row);
+            return null;
+        }
+
+        int rowHeight = mBuffer.getInt(offset + 4);
+        Size[] sizes = new Size[childCount];
+        for (int i = 0; i < childCount; i++) {
+            sizes[i] = new Size(mBuffer.getInt(offset + 8 + 4 * i), rowHeight);
+        }
+        return sizes;
+    }
+
+    // Stores the next row, the given sizes must all share the same height
+    void appendRow(List<Size> rowSizes) {
+        if (mIsBroken) return;
+
+        int childCount = rowSizes.size();
+        int offset = mDataEnd;
+        int recordSize = ROW_OVERHEAD_SIZE + 4 * childCount;
+        if (!ensureCapacity(offset + recordSize)) return;
+
+        mBuffer.putInt(offset, childCount);
+        mBuffer.putInt(offset + 4, rowSizes.get(0).getHeight());
+        for (int i = 0; i < childCount; i++) {
+            mBuffer.putInt(offset + 8 + 4 * i, rowSizes.get(i).getWidth());
+        }
+        mBuffer.putInt(offset + recordSize - 4, checksum(offset, recordSize - 4));
+
+        // Only remember the new row's offset if every offset before it is known
+        if (mKnownRowStartCount == mRowCount + 1) {
+            addRowStart(offset + recordSize, mRowFirstPositions[mRowCount] + childCount);
+        }
+
+        mRowCount++;
+        mDataEnd = offset + recordSize;
+        mIsIndexWritten = false;
+        writeHeader();
+    }
+
+    // Drops the row holding the given position, and every row after it
+    void truncateFromPosition(int position) {
+        // Every row start has to be known to search them
+        if (rowOffset(mRowCount) < 0) return;
+
+        // Last row starting at or before the position, the row count if it's past every row
+        int low = 0;
+        int high = mRowCount;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mRowFirstPositions[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        truncate(low);
+    }
+
+    private void truncate(int row) {
+        if (row >= mRowCount && mRowCount > 0) return;
+
+        int offset = row == 0 ? HEADER_SIZE : rowOffset(row);
+        if (offset < 0) return;
+
+        mKnownRowStartCount = Math.min(mKnownRowStartCount, row + 1);
+        mRowCount = row;
+        mDataEnd = offset;
+        mIsIndexWritten = false;
+        writeHeader();
+    }
+
+    // Returns the byte offset of the given row, walking the rows before it if their starts aren't
+    // known, or -1 if the stored rows don't reach it. Row count is a valid row here, it's where the
+    // next row goes.
+    private int rowOffset(int row) {
+        if (row > mRowCount) return -1;
+
+        while (mKnownRowStartCount <= row) {
+            int lastRow = mKnownRowStartCount - 1;
+            int offset = mRowOffsets[lastRow];
+            // Bounded by the data left, so a corrupt count can neither overflow nor overrun it
+            int maxChildCount = (mDataEnd - offset - ROW_OVERHEAD_SIZE) / 4;
+            int childCount = maxChildCount > 0 ? mBuffer.getInt(offset) : 0;
+            if (childCount <= 0 || childCount > maxChildCount) {
+                Log.w(TAG, String.format("Row %d is corrupt, dropping it and every row after it", lastRow));
+                truncate(lastRow);
+                return -1;
+            }
+
+            addRowStart(offset + ROW_OVERHEAD_SIZE + 4 * childCount, mRowFirstPositions[lastRow] + childCount);
+        }
+        return mRowOffsets[row];
+    }
+
+    private void addRowStart(int offset, int firstPosition) {
+        if (mKnownRowStartCount == mRowOffsets.length) {
+            int capacity = 2 * mRowOffsets.length;
+            mRowOffsets = Arrays.copyOf(mRowOffsets, capacity);
+            mRowFirstPositions = Arrays.copyOf(mRowFirstPositions, capacity);
+        }
+
+        mRowOffsets[mKnownRowStartCount] = offset;
+        mRowFirstPositions[mKnownRowStartCount] = firstPosition;
+        mKnownRowStartCount++;
+    }
+
+    // Loads the row starts from the index, returns false if it's missing or doesn't add up, in
+    // which case the rows are walked instead
+    private boolean readIndex() {
+        long indexEnd = (long) mDataEnd + 8L * mRowCount + 4;
+        if (indexEnd > mBuffer.capacity()) return false;
+
+        int indexSize = 8 * mRowCount;
+        if (checksum(mDataEnd, indexSize) != mBuffer.getInt(mDataEnd + indexSize)) {
+            Log.w(TAG, "Row index is corrupt, rows will be walked instead");
+            return false;
+        }
+
+        int[] rowOffsets = new int[mRowCount + 1];
+        int[] rowFirstPositions = new int[mRowCount + 1];
+        rowOffsets[0] = HEADER_SIZE;
+        IntBuffer index = ((ByteBuffer) mBuffer.duplicate().position(mDataEnd)).asIntBuffer();
+        index.get(rowOffsets, 1, mRowCount);
+        index.get(rowFirstPositions, 1, mRowCount);
+
+        // Rows must follow each other, each with as many children as its size allows
+        for (int row = 0; row < mRowCount; row++) {
+            int childCount = rowFirstPositions[row + 1] - rowFirstPositions[row];
+            if (childCount <= 0 || rowOffsets[row + 1] - rowOffsets[row] != ROW_OVERHEAD_SIZE + 4 * childCount) {
+                Log.w(TAG, "Row index is corrupt, rows will be walked instead");
+                return false;
+            }
+        }
+        if (rowOffsets[mRowCount] != mDataEnd) return false;
+
+        mRowOffsets = rowOffsets;
+        mRowFirstPositions = rowFirstPositions;
+        mKnownRowStartCount = mRowCount + 1;
+        return true;
+    }
+
+    // Writes the index after the rows, walking them first if their starts aren't all known
+    private void writeIndex() {
+        if (mIsIndexWritten || mIsBroken || rowOffset(mRowCount) < 0) return;
+
+        int indexSize = 8 * mRowCount;
+        if (!ensureCapacity(mDataEnd + indexSize + 4)) return;
+
+        IntBuffer index = ((ByteBuffer) mBuffer.duplicate().position(mDataEnd)).asIntBuffer();
+        index.put(mRowOffsets, 1, mRowCount);
+        index.put(mRowFirstPositions, 1, mRowCount);
+        mBuffer.putInt(mDataEnd + indexSize, checksum(mDataEnd, indexSize));
+
+        mIsIndexWritten = true;
+        writeHeader();
+    }
+
+    private boolean hasValidHeader() {
+        return mBuffer.getInt(OFFSET_MAGIC) == MAGIC
+                && mBuffer.getInt(OFFSET_FORMAT_VERSION) == FORMAT_VERSION
+                && mBuffer.getLong(OFFSET_DATASET_VERSION) == mDatasetVersion
+                && mBuffer.getInt(OFFSET_HEADER_CHECKSUM) == checksum(0, OFFSET_HEADER_CHECKSUM)
+                && mBuffer.getInt(OFFSET_ROW_COUNT) >= 0
+                && mBuffer.getInt(OFFSET_DATA_END) >= HEADER_SIZE
+                && mBuffer.getInt(OFFSET_DATA_END) <= mBuffer.capacity();
+    }
+
+    private void writeHeader() {
+        mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        mBuffer.putInt(OFFSET_FORMAT_VERSION, FORMAT_VERSION);
+        mBuffer.putLong(OFFSET_DATASET_VERSION, mDatasetVersion);
+        mBuffer.putInt(OFFSET_CONTENT_WIDTH, mContentWidth);
+        mBuffer.putInt(OFFSET_MAX_ROW_HEIGHT, mMaxRowHeight);
+        mBuffer.putInt(OFFSET_LAYOUT_MODE, mLayoutMode);
+        mBuffer.putInt(OFFSET_ROW_COUNT, mRowCount);
+        mBuffer.putInt(OFFSET_DATA_END, mDataEnd);
+        mBuffer.putInt(OFFSET_INDEXED_ROW_COUNT, mIsIndexWritten ? mRowCount : NO_INDEX);
+        mBuffer.putInt(OFFSET_HEADER_CHECKSUM, checksum(0, OFFSET_HEADER_CHECKSUM));
+    }
+
+    // Grows the mapping so it covers the given end offset, the file grows along with it
+    private boolean ensureCapacity(int end) {
+        if (end <= mBuffer.capacity()) return true;
+
+        try {
+            long capacity = Math.max(end, 2L * mBuffer.capacity());
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+            return end <= mBuffer.capacity();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not grow the layout cache, it won't store any more rows", e);
+            mIsBroken = true;
+            return false;
+        }
+    }
+
+    // FNV-1a hash of the given bytes
+    private int checksum(int offset, int length) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= mBuffer.get(i) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
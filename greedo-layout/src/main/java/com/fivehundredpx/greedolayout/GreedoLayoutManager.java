@@ -1,5 +1,8 @@
 package com.fivehundredpx.greedolayout;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.Log;
 import android.util.SparseArray;
 import android.view.View;
@@ -9,6 +12,9 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.SizeCalculatorDelegate;
+import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.TailRowPolicy;
+
+import java.util.concurrent.Executor;
 
 /**
  * Created by Julian Villella on 15-08-24.
@@ -28,6 +34,30 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
     // TODO: Can we do away with this?
     private enum Direction { NONE, UP, DOWN }
 
+    /**
+     * Listener notified when the range of visible positions changes, which is cheaper than polling
+     * the first and last visible positions on every scroll. Row ranges are inclusive, and account
+     * for the header if there is one.
+     */
+    public interface OnVisibleRangeChangedListener {
+        /**
+         * Called when the visible positions or rows changed. The positions are
+         * {@link RecyclerView#NO_POSITION} when nothing is visible.
+         */
+        void onVisibleRangeChanged(int firstVisiblePosition, int lastVisiblePosition,
+                                   int firstVisibleRow, int lastVisibleRow);
+
+        /**
+         * Called for each contiguous range of rows that came into view.
+         */
+        void onRowsEntered(int firstRow, int lastRow);
+
+        /**
+         * Called for each contiguous range of rows that went out of view.
+         */
+        void onRowsExited(int firstRow, int lastRow);
+    }
+
     // First (top-left) position visible at any point
     private int mFirstVisiblePosition;
 
@@ -37,7 +67,7 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
     // Flag to force current scroll offsets to be ignored on re-layout
     private boolean mForceClearOffsets;
 
-    // Scroll position offset that will be applied on the next layout pass
+    // Scroll position offset that will be applied along with mForceClearOffsets
     private int mPendingScrollPositionOffset = 0;
 
     // Flag to indicate that the first item should be treated as a header. Note: The size calculator
@@ -49,8 +79,9 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
     // The size of the header view. This is calculated in {@code preFillGrid}.
     private Size mHeaderViewSize;
 
-    // Adapter position that the view will be scrolled to after layout passes
+    // Adapter position that the view will be scrolled to after layout passes, and its offset
     private int mPendingScrollPosition = INVALID_SCROLL_POSITION;
+    private int mPendingScrollOffset;
 
     // This allows Greedo to layout only a fixed number of rows, any views from further rows
     // will remain detached and therefore hidden
@@ -58,10 +89,130 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
 
     private GreedoLayoutSizeCalculator mSizeCalculator;
 
+    private OnVisibleRangeChangedListener mOnVisibleRangeChangedListener;
+
+    // Max time spent computing rows each time the main thread goes idle. Rows are computed
+    // synchronously, as they are needed, when this is 0.
+    private long mIdleComputeBudgetNanos = 0;
+
+    // Adapter position we will scroll to once the rows up to it have been computed while idle,
+    // and its offset
+    private int mIdleComputeScrollPosition = INVALID_SCROLL_POSITION;
+    private int mIdleComputeScrollOffset;
+
+    private final IdleRowComputer mIdleRowComputer = new IdleRowComputer();
+
+    private RecyclerView mRecyclerView;
+
+    private int mScrollState = RecyclerView.SCROLL_STATE_IDLE;
+
+    // Min distance scrolled in a single step of a fling for children not to be attached, 0 to
+    // always attach them
+    private int mSkeletonScrollThreshold = 0;
+
+    // Flag to indicate a fast fling is in progress and no children are attached. Only the first
+    // visible row and its top are kept up to date while it lasts.
+    private boolean mIsSkeletonMode;
+    private int mSkeletonRowTop;
+
+    // Time the content width has to stay the same before rows are recomputed for it. Until then,
+    // the existing rows are scaled to the new width. Disabled when 0.
+    private long mResizeSettleDelayMillis = 0;
+
+    // Ratio between the content width and the width the rows were computed for, while resizing
+    private double mResizeScale = 1.0;
+
+    // Content width rows are currently scaled to, 0 when we aren't resizing
+    private int mResizeContentWidth = 0;
+
+    // Flag to recompute rows for the current width on the next layout, once it has settled
+    private boolean mIsResizeSettled;
+
+    private final Runnable mResizeSettleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsResizeSettled = true;
+            requestLayout();
+        }
+    };
+
+    // Content width of the rows in the last layout
+    private int mLaidOutContentWidth = 0;
+
+    // Flag to indicate we were measured to wrap our content before the header's height was known
+    private boolean mIsHeaderHeightPending;
+
+    private final Runnable mRemeasureRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestLayout();
+        }
+    };
+
+    // Visible range last reported to the listener
+    private int mReportedFirstVisiblePosition = RecyclerView.NO_POSITION;
+    private int mReportedLastVisiblePosition = RecyclerView.NO_POSITION;
+    private int mReportedFirstVisibleRow = RecyclerView.NO_POSITION;
+    private int mReportedLastVisibleRow = RecyclerView.NO_POSITION;
+
+    // Flag to indicate the size calculator is owned by someone else (e.g. a pool) and may be
+    // shared with other layout managers, in which case we don't reset it on whole data set changes
+    private boolean mIsSizeCalculatorShared;
+
+    // Incremented on every configuration or size calculator change, so that rows computed off the
+    // main thread for an older configuration are dropped
+    private int mLayoutConfigurationGeneration = 0;
+
+    // Incremented on every adapter change, rows computed off the main thread are only swapped in
+    // if the data set didn't change meanwhile
+    private int mDataSetGeneration = 0;
+
+    // Flag to keep the top left child in place on the next layout, rows having been re-broken for
+    // a new configuration
+    private boolean mIsAnchorPending;
+
     public GreedoLayoutManager(SizeCalculatorDelegate sizeCalculatorDelegate) {
         mSizeCalculator = new GreedoLayoutSizeCalculator(sizeCalculatorDelegate);
     }
 
+    /**
+     * Create a layout manager that uses a shared size calculator. See
+     * {@link #setSizeCalculator(GreedoLayoutSizeCalculator)}.
+     *
+     * @param sizeCalculator the size calculator to lay out children with.
+     */
+    public GreedoLayoutManager(GreedoLayoutSizeCalculator sizeCalculator) {
+        mSizeCalculator = sizeCalculator;
+        mIsSizeCalculatorShared = true;
+    }
+
+    /**
+     * Attach a size calculator that can be shared with other layout managers, for example one
+     * obtained from a {@link GreedoLayoutSizeCalculatorPool}. The rows it has already computed are
+     * reused as they are, and the layout is scrolled back to the first row.
+     *
+     * A shared calculator is left alone on adapter changes, every layout manager sharing it would
+     * apply the same change. Whoever hands it out is expected to hand out a different calculator
+     * (with a new data set id for a pool) whenever the data set's content changes. Changing the
+     * width or configuration of this layout manager switches it to a private copy of the
+     * calculator, so the shared one keeps the width and configuration it was obtained for.
+     *
+     * @param sizeCalculator the size calculator to lay out children with.
+     */
+    public void setSizeCalculator(GreedoLayoutSizeCalculator sizeCalculator) {
+        if (mSizeCalculator == sizeCalculator) return;
+
+        mSizeCalculator = sizeCalculator;
+        mIsSizeCalculatorShared = true;
+        mLayoutConfigurationGeneration++;
+
+        mFirstVisibleRow = 0;
+        mFirstVisiblePosition = 0;
+        mForceClearOffsets = true;
+        mPendingScrollPositionOffset = 0;
+        requestLayout();
+    }
+
     /**
      * Set to true if you want all rows to be of the same height. The height will be equal to the
      * value passed to {@code setMaxRowHeight(int)}.
@@ -69,17 +220,29 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
      * @param fixedHeight true to ensure all rows will have the same height.
      */
     public void setFixedHeight(boolean fixedHeight) {
-        mSizeCalculator.setFixedHeight(fixedHeight);
+        setLayoutConfiguration(getLayoutConfiguration().withFixedHeight(fixedHeight));
     }
 
     /**
      * The max height a row could be. If fixed height is enabled via {@code setFixedHeight(boolean)}
-     * the given max row height value will be used as the fixed row height.
+     * the given max row height value will be used as the fixed row height. Rows are re-broken
+     * from the aspect ratios already known, so this is cheap enough to call while pinching to zoom.
      *
      * @param maxRowHeight Max height a row can grow to.
      */
     public void setMaxRowHeight(int maxRowHeight) {
-        mSizeCalculator.setMaxRowHeight(maxRowHeight);
+        setLayoutConfiguration(getLayoutConfiguration().withMaxRowHeight(maxRowHeight));
+    }
+
+    /**
+     * Snap row heights to a small set of heights in variable height mode, so that images of the
+     * same aspect ratio get decoded to the same size and can be reused from bitmap pools. See
+     * {@link GreedoLayoutSizeCalculator#setRowHeightBuckets(int...)}.
+     *
+     * @param rowHeightBuckets Heights rows can have, or none to keep exact row heights.
+     */
+    public void setRowHeightBuckets(int... rowHeightBuckets) {
+        setLayoutConfiguration(getLayoutConfiguration().withRowHeightBuckets(rowHeightBuckets));
     }
 
     /**
@@ -96,9 +259,195 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         return mIsFirstViewHeader;
     }
 
+    /**
+     * Set how the last row is sized when there aren't enough items left to fill it. The row is
+     * recomputed once more items are appended to the adapter.
+     *
+     * @param tailRowPolicy the policy to size the last row with.
+     */
+    public void setTailRowPolicy(TailRowPolicy tailRowPolicy) {
+        setLayoutConfiguration(getLayoutConfiguration().withTailRowPolicy(tailRowPolicy));
+    }
+
+    public GreedoLayoutConfiguration getLayoutConfiguration() {
+        return mSizeCalculator.getConfiguration();
+    }
+
+    /**
+     * Apply every setting of the given configuration at once, so rows are only re-broken once. The
+     * top left child is kept in place. Any switch still in progress from
+     * {@link #setLayoutConfigurationAsync(GreedoLayoutConfiguration, Executor)} is dropped.
+     *
+     * @param configuration the configuration to lay out rows with.
+     */
+    public void setLayoutConfiguration(GreedoLayoutConfiguration configuration) {
+        mLayoutConfigurationGeneration++;
+        if (configuration.equals(getLayoutConfiguration())) return;
+
+        anchorFirstVisiblePosition();
+        unshareSizeCalculator();
+        mSizeCalculator.setConfiguration(configuration);
+        requestLayout();
+    }
+
+    /**
+     * Apply the given configuration without re-breaking rows on the main thread. The current rows
+     * stay on screen while the rows from the top to a screen past the first visible item are
+     * computed on the given executor, from the aspect ratios already known. They are then swapped
+     * in in a single layout, with the top left child kept in place. Any row that needs an aspect
+     * ratio that isn't known yet is computed on the main thread once swapped in, as usual.
+     *
+     * Aspect ratios before the first visible item that aren't known yet, such as those of changed
+     * items, are queried on the main thread first, so that the rows up to it can be computed.
+     *
+     * The last configuration set wins, a switch still in progress is dropped by the next one. If
+     * the adapter or the width changes before the rows are ready, the configuration is applied on
+     * the main thread instead. Rows are swapped in with a new size calculator, which isn't shared.
+     *
+     * @param configuration the configuration to lay out rows with.
+     * @param executor executor the rows are computed on.
+     */
+    public void setLayoutConfigurationAsync(final GreedoLayoutConfiguration configuration, Executor executor) {
+        // There are no rows on screen to keep while the new ones are computed
+        if (mSizeCalculator.getContentWidth() <= 0 || getChildCount() == 0) {
+            setLayoutConfiguration(configuration);
+            return;
+        }
+
+        final int generation = ++mLayoutConfigurationGeneration;
+        if (configuration.equals(getLayoutConfiguration())) return;
+
+        final int dataSetGeneration = mDataSetGeneration;
+        final int contentWidth = mSizeCalculator.getContentWidth();
+        final int anchorPosition = Math.max(0, calculatorPosition(mFirstVisiblePosition));
+        final int height = getHeight();
+
+        // The copy stops at the first aspect ratio it doesn't know
+        mSizeCalculator.queryUnknownAspectRatios(anchorPosition + 1);
+        final GreedoLayoutSizeCalculator sizeCalculator = mSizeCalculator.copyWithConfiguration(configuration);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sizeCalculator.computeRowsFromKnownAspectRatios(anchorPosition, height);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mLayoutConfigurationGeneration) {
+                            // Another configuration was set since
+                            return;
+                        } else if (dataSetGeneration != mDataSetGeneration
+                                || contentWidth != mSizeCalculator.getContentWidth()) {
+                            // The rows were computed for stale data or another width
+                            setLayoutConfiguration(configuration);
+                        } else {
+                            swapSizeCalculator(sizeCalculator);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void swapSizeCalculator(GreedoLayoutSizeCalculator sizeCalculator) {
+        // A shared calculator keeps its layout cache, the cache holds rows for a single
+        // configuration at a time
+        if (!mIsSizeCalculatorShared) {
+            sizeCalculator.setLayoutCache(mSizeCalculator.getLayoutCache());
+        }
+
+        anchorFirstVisiblePosition();
+        mSizeCalculator = sizeCalculator;
+        mIsSizeCalculatorShared = false;
+        requestLayout();
+    }
+
+    // Switches to a private copy of a shared calculator before reconfiguring it, so that the layout
+    // managers sharing it keep their rows. The copy keeps the aspect ratios known so far.
+    private void unshareSizeCalculator() {
+        if (!mIsSizeCalculatorShared) return;
+
+        mSizeCalculator = mSizeCalculator.copyWithConfiguration(mSizeCalculator.getConfiguration());
+        mIsSizeCalculatorShared = false;
+    }
+
+    // Width rows are computed for. A shared calculator that already has a width is only changed
+    // through a private copy, see unshareSizeCalculator().
+    private void setSizeCalculatorContentWidth(int contentWidth) {
+        int computedContentWidth = mSizeCalculator.getContentWidth();
+        if (computedContentWidth == contentWidth) return;
+
+        if (computedContentWidth > 0) {
+            unshareSizeCalculator();
+        }
+        mSizeCalculator.setContentWidth(contentWidth);
+    }
+
+    // Rows are about to be re-broken, remember the top left item so that it's kept in place.
+    // During a fling without children only the first visible row is up to date.
+    private void anchorFirstVisiblePosition() {
+        if (isSkeletonRowVisible()) {
+            mFirstVisiblePosition = firstChildPositionForRow(mFirstVisibleRow);
+        }
+        mIsAnchorPending = true;
+    }
+
+    /**
+     * Set a time budget to compute rows while the main thread is idle. Layouts still compute the
+     * rows needed to fill the viewport right away, but the rest of the data set is then computed in
+     * slices of at most the given budget, so that jumping deep into a large data set later is
+     * cheap. Scrolling to a position that hasn't been computed yet is deferred until the rows up to
+     * it have been computed the same way. Set to 0 to disable.
+     *
+     * @param budgetMicros Max time, in microseconds, spent computing rows in each slice.
+     */
+    public void setIdleComputeBudget(long budgetMicros) {
+        if (budgetMicros < 0) {
+            throw new IllegalArgumentException("Idle compute budget must not be negative");
+        }
+
+        mIdleComputeBudgetNanos = budgetMicros * 1000;
+        if (mIdleComputeBudgetNanos == 0) {
+            mIdleRowComputer.cancel();
+            if (mIdleComputeScrollPosition != INVALID_SCROLL_POSITION) {
+                int position = mIdleComputeScrollPosition;
+                mIdleComputeScrollPosition = INVALID_SCROLL_POSITION;
+                scrollToPositionWithOffset(position, mIdleComputeScrollOffset);
+            }
+        }
+    }
+
+    /**
+     * Set how long the width has to stay the same before rows are re-broken for it. While the
+     * width keeps changing, for example while a window is being resized or a side panel animates,
+     * the existing rows are scaled proportionally instead of being recomputed on every frame. Once
+     * the width has settled, rows are recomputed with the top left child kept in place. Set to 0 to
+     * recompute rows as soon as the width changes, which is the default.
+     *
+     * @param delayMillis Time, in milliseconds, the width has to stay the same.
+     */
+    public void setResizeSettleDelay(long delayMillis) {
+        mResizeSettleDelayMillis = Math.max(0, delayMillis);
+    }
+
+    /**
+     * Set how fast a fling has to be for children not to be attached while it lasts. As long as
+     * the fling scrolls at least the given distance in a single step, children are detached and
+     * only the row model is scrolled, so a {@link GreedoSkeletonItemDecoration} can draw
+     * placeholders in their place. Children are attached again once the fling slows down or
+     * stops. Set to 0 to always attach children, which is the default.
+     *
+     * @param scrollThreshold Min distance, in pixels, scrolled in a single step of a fling.
+     */
+    public void setSkeletonScrollThreshold(int scrollThreshold) {
+        mSkeletonScrollThreshold = Math.max(0, scrollThreshold);
+    }
+
     /**
      * Set this if you want a fixed amount of rows to be laid out. If the adapter has
      * more items than fits these rows, they will remain hidden. Set to -1 to disable.
+     * A RecyclerView with a wrap_content height is measured to fit exactly these rows.
      *
      * @param rows the amount of rows to layout
      */
@@ -106,6 +455,19 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         mRowsLimit = rows;
     }
 
+    /**
+     * Set a listener to be notified when the range of visible positions changes.
+     *
+     * @param listener the listener, or null to remove it.
+     */
+    public void setOnVisibleRangeChangedListener(OnVisibleRangeChangedListener listener) {
+        mOnVisibleRangeChangedListener = listener;
+        mReportedFirstVisiblePosition = RecyclerView.NO_POSITION;
+        mReportedLastVisiblePosition = RecyclerView.NO_POSITION;
+        mReportedFirstVisibleRow = RecyclerView.NO_POSITION;
+        mReportedLastVisibleRow = RecyclerView.NO_POSITION;
+    }
+
     // The initial call from the framework, received when we need to start laying out the initial
     // set of views, or when the user changes the data set
     @Override
@@ -113,36 +475,263 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         // We have nothing to show for an empty data set but clear any existing views
         if (getItemCount() == 0) {
             detachAndScrapAttachedViews(recycler);
+            dispatchVisibleRangeChanged();
             return;
         }
 
-        mSizeCalculator.setContentWidth(getContentWidth());
-        mSizeCalculator.reset();
+        // Only a width change invalidates the computed sizes here, adapter changes are handled as
+        // they are dispatched so that a plain re-layout costs no size calculations at all
+        mSizeCalculator.setItemCount(mIsFirstViewHeader ? state.getItemCount() - 1 : state.getItemCount());
+        updateContentWidth();
+
+        // Compared with the width of the last layout, a wrap_content height hands the new width to
+        // the calculator while measuring already
+        boolean isContentWidthChanged = mSizeCalculator.getContentWidth() != mLaidOutContentWidth;
+        mLaidOutContentWidth = mSizeCalculator.getContentWidth();
+
+        if (getChildCount() != 0) {
+            if (isContentWidthChanged || mIsAnchorPending) {
+                // Rows were re-broken for a new width or configuration, keep the top left child at
+                // the top
+                mFirstVisibleRow = rowForChildPosition(Math.min(mFirstVisiblePosition, getItemCount() - 1));
+            } else if (!hasRow(mFirstVisibleRow)) {
+                // Items were removed from under the first visible row
+                mFirstVisibleRow = rowForChildPosition(getItemCount() - 1);
+            }
+        }
 
         int initialTopOffset = 0;
-        if (getChildCount() == 0) { // First or empty layout
+        if (getChildCount() == 0 && mIsSkeletonMode) { // Views were dropped during a fling
+            // Attach views where the fling left off
+            if (mIsAnchorPending) {
+                mFirstVisibleRow = rowForChildPosition(Math.min(mFirstVisiblePosition, getItemCount() - 1));
+            }
+            initialTopOffset = mForceClearOffsets ? mPendingScrollPositionOffset : mSkeletonRowTop - getPaddingTop();
+            mForceClearOffsets = false;
+            mPendingScrollPositionOffset = 0;
+            mIsSkeletonMode = false;
+        } else if (getChildCount() == 0) { // First or empty layout
             mFirstVisiblePosition = 0;
             mFirstVisibleRow = 0;
         } else { // Adapter data set changes
             // Keep the existing initial position, and save off the current scrolled offset.
             final View topChild = getChildAt(0);
             if (mForceClearOffsets) {
-                initialTopOffset = 0;
+                initialTopOffset = mPendingScrollPositionOffset;
                 mForceClearOffsets = false;
+                mPendingScrollPositionOffset = 0;
             } else {
                 initialTopOffset = getDecoratedTop(topChild);
             }
         }
 
+        mIsAnchorPending = false;
+
         detachAndScrapAttachedViews(recycler);
         preFillGrid(Direction.NONE, 0, initialTopOffset, recycler, state);
-        mPendingScrollPositionOffset = 0;
+
+        dispatchVisibleRangeChanged();
+
+        if (mIdleComputeBudgetNanos > 0 && (!mSizeCalculator.isComplete()
+                || mIdleComputeScrollPosition != INVALID_SCROLL_POSITION)) {
+            mIdleRowComputer.schedule();
+        }
+
+        // We were measured without the header, measure again now that we know its height
+        if (mIsHeaderHeightPending && mHeaderViewSize != null) {
+            mIsHeaderHeightPending = false;
+            postOnAnimation(mRemeasureRunnable);
+        }
+    }
+
+    @Override
+    public void onMeasure(@NonNull RecyclerView.Recycler recycler, @NonNull RecyclerView.State state,
+                          int widthSpec, int heightSpec) {
+        if (View.MeasureSpec.getMode(heightSpec) == View.MeasureSpec.EXACTLY) {
+            super.onMeasure(recycler, state, widthSpec, heightSpec);
+            return;
+        }
+
+        // Rows always stretch to the width they're given, so a wrap_content width takes all the
+        // width available
+        int width = View.MeasureSpec.getMode(widthSpec) == View.MeasureSpec.AT_MOST
+                ? View.MeasureSpec.getSize(widthSpec)
+                : chooseSize(widthSpec, getPaddingLeft() + getPaddingRight(), getMinimumWidth());
+
+        // Rows past the height we're allowed would only get clamped
+        int maxContentHeight = View.MeasureSpec.getMode(heightSpec) == View.MeasureSpec.AT_MOST
+                ? View.MeasureSpec.getSize(heightSpec) - getPaddingTop() - getPaddingBottom()
+                : Integer.MAX_VALUE;
+        int contentHeight = measureContentHeight(width - getPaddingLeft() - getPaddingRight(),
+                maxContentHeight, state);
+        int height = chooseSize(heightSpec, getPaddingTop() + contentHeight + getPaddingBottom(),
+                getMinimumHeight());
+
+        setMeasuredDimension(width, height);
+    }
+
+    // Height of the rows we would lay out from the top for the given content width, taken from the
+    // size calculator so no child gets created or bound. The header's height is only known once
+    // it's been laid out, until then it doesn't count. Rows are only computed until they reach the
+    // given max height.
+    private int measureContentHeight(int contentWidth, int maxContentHeight, RecyclerView.State state) {
+        int headerHeight = 0;
+        if (mIsFirstViewHeader && state.getItemCount() > 0) {
+            if (mHeaderViewSize != null) {
+                headerHeight = mHeaderViewSize.getHeight();
+            } else {
+                mIsHeaderHeightPending = true;
+            }
+        }
+
+        int itemCount = mIsFirstViewHeader ? state.getItemCount() - 1 : state.getItemCount();
+        int rowsLimit = mIsFirstViewHeader ? mRowsLimit - 1 : mRowsLimit;
+        if (contentWidth <= 0 || itemCount <= 0 || rowsLimit == 0) {
+            return headerHeight;
+        }
+
+        // While live resizing the rows keep the width they were computed for, and get scaled
+        int computedContentWidth = mSizeCalculator.getContentWidth();
+        double scale = 1.0;
+        if (mResizeSettleDelayMillis > 0 && computedContentWidth > 0 && getChildCount() != 0
+                && !mIsResizeSettled) {
+            scale = contentWidth / (double) computedContentWidth;
+        } else {
+            setSizeCalculatorContentWidth(contentWidth);
+        }
+        mSizeCalculator.setItemCount(itemCount);
+
+        int maxRowsHeight = maxContentHeight - headerHeight;
+        int lastRow = 0;
+        while ((rowsLimit < 0 || lastRow + 1 < rowsLimit)
+                && (mSizeCalculator.getRowTop(lastRow) + mSizeCalculator.getRowHeight(lastRow)) * scale < maxRowsHeight
+                && mSizeCalculator.hasRow(lastRow + 1)) {
+            lastRow++;
+        }
+
+        int rowsHeight = mSizeCalculator.getRowTop(lastRow) + mSizeCalculator.getRowHeight(lastRow);
+        return headerHeight + (int) Math.round(rowsHeight * scale);
+    }
+
+    // Hands the current content width to the size calculator, unless we're live resizing in which
+    // case the existing rows are scaled until the width settles.
+    private void updateContentWidth() {
+        int contentWidth = getContentWidth();
+        int computedContentWidth = mSizeCalculator.getContentWidth();
+
+        boolean canScaleRows = mResizeSettleDelayMillis > 0 && mRecyclerView != null
+                && computedContentWidth > 0 && getChildCount() != 0;
+        if (canScaleRows && contentWidth != computedContentWidth && !mIsResizeSettled) {
+            // Restart the settle delay every time the width changes
+            if (contentWidth != mResizeContentWidth) {
+                mResizeContentWidth = contentWidth;
+                mResizeScale = contentWidth / (double) computedContentWidth;
+                mRecyclerView.removeCallbacks(mResizeSettleRunnable);
+                mRecyclerView.postDelayed(mResizeSettleRunnable, mResizeSettleDelayMillis);
+            }
+            return;
+        }
+
+        if (mRecyclerView != null) {
+            mRecyclerView.removeCallbacks(mResizeSettleRunnable);
+        }
+        mIsResizeSettled = false;
+        mResizeContentWidth = 0;
+        mResizeScale = 1.0;
+
+        setSizeCalculatorContentWidth(contentWidth);
+    }
+
+    @Override
+    public void onAttachedToWindow(RecyclerView view) {
+        super.onAttachedToWindow(view);
+        mRecyclerView = view;
+    }
+
+    @Override
+    public void onDetachedFromWindow(RecyclerView view, RecyclerView.Recycler recycler) {
+        super.onDetachedFromWindow(view, recycler);
+        mIdleRowComputer.cancel();
+
+        view.removeCallbacks(mResizeSettleRunnable);
+        removeCallbacks(mRemeasureRunnable);
+        mRecyclerView = null;
     }
 
     @Override
     public void onAdapterChanged(RecyclerView.Adapter oldAdapter, RecyclerView.Adapter newAdapter) {
+        mDataSetGeneration++;
         removeAllViews();
-        mSizeCalculator.reset();
+        if (!mIsSizeCalculatorShared) {
+            mSizeCalculator.reset();
+        }
+    }
+
+    @Override
+    public void onItemsChanged(@NonNull RecyclerView recyclerView) {
+        mDataSetGeneration++;
+        if (!mIsSizeCalculatorShared) {
+            mSizeCalculator.reset();
+        }
+    }
+
+    @Override
+    public void onItemsAdded(@NonNull RecyclerView recyclerView, int positionStart, int itemCount) {
+        mDataSetGeneration++;
+        // Every layout manager sharing the calculator gets the same change, see setSizeCalculator()
+        if (mIsSizeCalculatorShared) return;
+
+        if (isHeaderChanged(positionStart)) {
+            mSizeCalculator.reset();
+        } else {
+            // Appending a page only recomputes the last row
+            mSizeCalculator.onItemsAdded(calculatorPosition(positionStart), itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsRemoved(@NonNull RecyclerView recyclerView, int positionStart, int itemCount) {
+        mDataSetGeneration++;
+        if (mIsSizeCalculatorShared) return;
+
+        if (isHeaderChanged(positionStart)) {
+            mSizeCalculator.reset();
+        } else {
+            mSizeCalculator.onItemsRemoved(calculatorPosition(positionStart), itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsUpdated(@NonNull RecyclerView recyclerView, int positionStart, int itemCount) {
+        mDataSetGeneration++;
+        if (mIsSizeCalculatorShared) return;
+
+        if (isHeaderChanged(positionStart)) {
+            mSizeCalculator.reset();
+        } else {
+            mSizeCalculator.onItemsUpdated(calculatorPosition(positionStart), itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsMoved(@NonNull RecyclerView recyclerView, int from, int to, int itemCount) {
+        mDataSetGeneration++;
+        if (mIsSizeCalculatorShared) return;
+
+        if (isHeaderChanged(Math.min(from, to))) {
+            mSizeCalculator.reset();
+        } else {
+            mSizeCalculator.onItemsMoved(calculatorPosition(from), calculatorPosition(to), itemCount);
+        }
+    }
+
+    // Item changes that involve the header shift every position the calculator knows about
+    private boolean isHeaderChanged(int position) {
+        return mIsFirstViewHeader && position == HEADER_POSITION;
+    }
+
+    private int calculatorPosition(int position) {
+        return mIsFirstViewHeader ? position - 1 : position;
     }
 
     /**
@@ -169,13 +758,13 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
             if (mFirstVisiblePosition != newFirstVisiblePosition) {
                 switch (direction) {
                     case UP: // new row above may be shown
-                        double previousTopRowHeight = sizeForChildAtPosition(
-                                mFirstVisiblePosition - 1).getHeight();
+                        double previousTopRowHeight = layoutHeightForChildAtPosition(
+                                mFirstVisiblePosition - 1);
                         startTopOffset -= previousTopRowHeight;
                         break;
                     case DOWN: // row may have gone off screen
-                        double topRowHeight = sizeForChildAtPosition(
-                                mFirstVisiblePosition).getHeight();
+                        double topRowHeight = layoutHeightForChildAtPosition(
+                                mFirstVisiblePosition);
                         startTopOffset += topRowHeight;
                         break;
                 }
@@ -200,13 +789,38 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         // Next, supply the grid of items that are deemed visible. If they were previously there,
         //      they will simply be re-attached. New views that must be created are obtained from
         //      the Recycler and added.
-        int leftOffset = startLeftOffset;
-        int topOffset  = startTopOffset + mPendingScrollPositionOffset;
+        // The left offset is kept relative to the row start, in computed sizes, and only scaled
+        //      when laying out a view so that scaled rows still line up with the content edges
+        int leftOffset = 0;
+        int topOffset  = startTopOffset;
         int nextPosition = mFirstVisiblePosition;
 
-        int currentRow = 0;
+        // Only compute the rows we are allowed to show when there's a rows limit
+        int lastPosition = state.getItemCount() - 1;
+        int lastRow = mFirstVisibleRow + mRowsLimit - 1;
+        if (mRowsLimit > 0 && hasRow(lastRow)) {
+            lastPosition = Math.min(lastPosition, lastChildPositionForRow(lastRow));
+        }
+
+        int currentRow = mFirstVisibleRow;
 
-        while (nextPosition >= 0 && nextPosition < state.getItemCount()) {
+        while (nextPosition >= 0 && nextPosition <= lastPosition) {
+            // Move on to the next row once all children of the current one are laid out
+            int row = rowForChildPosition(nextPosition);
+            if (row != currentRow) {
+                currentRow = row;
+
+                leftOffset = 0;
+                topOffset += layoutHeightForChildAtPosition(nextPosition - 1);
+            }
+
+            // These next children would no longer be visible, stop here
+            boolean isAtEndOfContent;
+            switch (direction) {
+                case DOWN: isAtEndOfContent = topOffset >= getContentHeight() + dy; break;
+                default:   isAtEndOfContent = topOffset >= getContentHeight();      break;
+            }
+            if (isAtEndOfContent) break;
 
             boolean isViewCached = true;
             View view = viewCache.get(nextPosition);
@@ -220,26 +834,7 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
                 mHeaderViewSize = new Size(view.getMeasuredWidth(), view.getMeasuredHeight());
             }
 
-            // Overflow to next row if we don't fit
             Size viewSize = sizeForChildAtPosition(nextPosition);
-            if ((leftOffset + viewSize.getWidth()) > getContentWidth()) {
-                // Break if the rows limit has been hit
-                if (currentRow + 1 == mRowsLimit) break;
-                currentRow++;
-
-                leftOffset = startLeftOffset;
-                Size previousViewSize = sizeForChildAtPosition(nextPosition - 1);
-                topOffset += previousViewSize.getHeight();
-            }
-
-            // These next children would no longer be visible, stop here
-            boolean isAtEndOfContent;
-            switch (direction) {
-                case DOWN: isAtEndOfContent = topOffset >= getContentHeight() + dy; break;
-                default:   isAtEndOfContent = topOffset >= getContentHeight();      break;
-            }
-            if (isAtEndOfContent) break;
-
             if (isViewCached) {
                 // Re-attach the cached view at its new index
                 attachView(view);
@@ -248,9 +843,10 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
                 addView(view);
                 measureChildWithMargins(view, 0, 0);
 
-                int right  = leftOffset + viewSize.getWidth();
-                int bottom = topOffset  + viewSize.getHeight();
-                layoutDecorated(view, leftOffset, topOffset, right, bottom);
+                int left   = startLeftOffset + scaleToLayout(nextPosition, leftOffset);
+                int right  = startLeftOffset + scaleToLayout(nextPosition, leftOffset + viewSize.getWidth());
+                int bottom = topOffset + scaleToLayout(nextPosition, viewSize.getHeight());
+                layoutDecorated(view, left, topOffset, right, bottom);
             }
 
             leftOffset += viewSize.getWidth();
@@ -279,8 +875,9 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
 
         // Run pending scroll if there's any
         if (mPendingScrollPosition != INVALID_SCROLL_POSITION) {
-            scrollToPosition(mPendingScrollPosition);
+            int position = mPendingScrollPosition;
             mPendingScrollPosition = INVALID_SCROLL_POSITION;
+            scrollToPositionWithOffset(position, mPendingScrollOffset);
         }
     }
 
@@ -292,8 +889,41 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         return getHeight() - getPaddingTop() - getPaddingBottom();
     }
 
+    // While live resizing, rows keep the sizes computed for the previous width and are scaled to
+    // the current one. The header is measured at the current width already.
+    int scaleToLayout(int position, int value) {
+        if (mResizeScale == 1.0 || (mIsFirstViewHeader && position == HEADER_POSITION)) {
+            return value;
+        }
+        return (int) Math.round(value * mResizeScale);
+    }
+
+    int layoutHeightForChildAtPosition(int position) {
+        return scaleToLayout(position, sizeForChildAtPosition(position).getHeight());
+    }
+
+    // Height of the given row as laid out, the header row has no height until it's been measured
+    int layoutHeightForRow(int row) {
+        if (mIsFirstViewHeader && row == HEADER_POSITION && mHeaderViewSize == null) {
+            return 0;
+        }
+        return layoutHeightForChildAtPosition(firstChildPositionForRow(row));
+    }
+
+    int getFirstVisibleRow() {
+        return mFirstVisibleRow;
+    }
+
+    // Top of the first visible row, which is tracked without any children during a fling
+    int getFirstVisibleRowTop() {
+        if (mIsSkeletonMode || getChildCount() == 0) {
+            return mIsSkeletonMode ? mSkeletonRowTop : getPaddingTop();
+        }
+        return getDecoratedTop(getChildAt(0));
+    }
+
     //region SizeCalculator proxy methods
-    private Size sizeForChildAtPosition(int position) {
+    Size sizeForChildAtPosition(int position) {
         if (mIsFirstViewHeader && position == HEADER_POSITION) {
             return mHeaderViewSize;
         } else if (mIsFirstViewHeader && position > HEADER_POSITION) {
@@ -304,7 +934,7 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         return mSizeCalculator.sizeForChildAtPosition(position);
     }
 
-    private int rowForChildPosition(int position) {
+    int rowForChildPosition(int position) {
         int offset = 0;
         if (mIsFirstViewHeader && position == HEADER_POSITION) {
             return HEADER_POSITION;
@@ -317,7 +947,7 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         return mSizeCalculator.getRowForChildPosition(position) + offset;
     }
 
-    private int firstChildPositionForRow(int row) {
+    int firstChildPositionForRow(int row) {
         int offset = 0;
         if (mIsFirstViewHeader && row == HEADER_POSITION) {
             return HEADER_POSITION;
@@ -329,6 +959,41 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
 
         return mSizeCalculator.getFirstChildPositionForRow(row) + offset;
     }
+
+    private boolean isPositionComputed(int position) {
+        if (mIsFirstViewHeader && position == HEADER_POSITION) {
+            return true;
+        } else if (mIsFirstViewHeader && position > HEADER_POSITION) {
+            // Decrement position to factor in existence of header
+            position -= 1;
+        }
+
+        return mSizeCalculator.isPositionComputed(position);
+    }
+
+    boolean hasRow(int row) {
+        if (mIsFirstViewHeader && row == HEADER_POSITION) {
+            return true;
+        } else if (mIsFirstViewHeader && row > HEADER_POSITION) {
+            // Decrement row to factor in existence of header
+            row -= 1;
+        }
+
+        return mSizeCalculator.hasRow(row);
+    }
+
+    int lastChildPositionForRow(int row) {
+        int offset = 0;
+        if (mIsFirstViewHeader && row == HEADER_POSITION) {
+            return HEADER_POSITION;
+        } else if (mIsFirstViewHeader && row > HEADER_POSITION) {
+            // Decrement row to factor in existence of header
+            row -= 1;
+            offset = 1;
+        }
+
+        return mSizeCalculator.getLastChildPositionForRow(row) + offset;
+    }
     //endregion
 
     /**
@@ -336,6 +1001,20 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
      */
     @Override
     public void scrollToPosition(int position) {
+        scrollToPositionWithOffset(position, 0);
+    }
+
+    /**
+     * Scroll to the specified adapter position with the given offset. Note that the scroll position
+     * change will not be reflected until the next layout call. If you are just trying to make a
+     * position visible, use {@link #scrollToPosition(int)}.
+     *
+     * @param position Index (starting at 0) of the reference item.
+     * @param offset   The distance (in pixels) between the start edge of the item view and
+     *                 start edge of the RecyclerView.
+     * @see #scrollToPosition(int)
+     */
+    public void scrollToPositionWithOffset(int position, int offset) {
         if (position >= getItemCount()) {
             Log.w(TAG, String.format("Cannot scroll to %d, item count is %d", position, getItemCount()));
             return;
@@ -345,9 +1024,22 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         // so defer the scrolling request after the postLayout pass
         if (mSizeCalculator.getContentWidth() <= 0) {
             mPendingScrollPosition = position;
+            mPendingScrollOffset = offset;
+            return;
+        }
+
+        // Computing every row up to a position deep into the data set could take several frames,
+        // so compute them while idle and scroll once they're done
+        if (mIdleComputeBudgetNanos > 0 && !isPositionComputed(position)) {
+            mIdleComputeScrollPosition = position;
+            mIdleComputeScrollOffset = offset;
+            mIdleRowComputer.schedule();
             return;
         }
+        mIdleComputeScrollPosition = INVALID_SCROLL_POSITION;
 
+        // Only set once the scroll is certain, so the layout it requests is the one that applies it
+        mPendingScrollPositionOffset = offset;
         mForceClearOffsets = true; // Ignore current scroll offset
         mFirstVisibleRow = rowForChildPosition(position);
         mFirstVisiblePosition = firstChildPositionForRow(mFirstVisibleRow);
@@ -355,21 +1047,6 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         requestLayout();
     }
 
-    /**
-     * Scroll to the specified adapter position with the given offset. Note that the scroll position
-     * change will not be reflected until the next layout call. If you are just trying to make a
-     * position visible, use {@link #scrollToPosition(int)}.
-     *
-     * @param position Index (starting at 0) of the reference item.
-     * @param offset   The distance (in pixels) between the start edge of the item view and
-     *                 start edge of the RecyclerView.
-     * @see #scrollToPosition(int)
-     */
-    public void scrollToPositionWithOffset(int position, int offset) {
-        mPendingScrollPositionOffset = offset;
-        scrollToPosition(position);
-    }
-
     @Override
     public boolean canScrollVertically() {
         return true;
@@ -377,18 +1054,42 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
 
     @Override
     public int computeVerticalScrollOffset(RecyclerView.State state) {
+        if (isSkeletonRowVisible()) {
+            return Math.abs(mSkeletonRowTop);
+        }
+
         View topLeftView = getChildAt(0);
         return topLeftView == null ? 0 : Math.abs(getDecoratedTop(topLeftView));
     }
 
     @Override
     public int computeVerticalScrollRange(@NonNull RecyclerView.State state) {
+        if (isSkeletonRowVisible()) {
+            // Bottom of the last row on screen, as if its children were attached
+            int rowBottom = mSkeletonRowTop;
+            int lastRow = findLastSkeletonRow();
+            for (int row = mFirstVisibleRow; row <= lastRow; row++) {
+                rowBottom += layoutHeightForRow(row);
+            }
+            return rowBottom;
+        }
+
         View bottomRightView = getChildAt(getChildCount() - 1);
         return bottomRightView == null ? 0 : getDecoratedBottom(bottomRightView);
     }
 
     @Override
     public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        if (dy != 0 && getItemCount() != 0 && isSkeletonScroll(dy)) {
+            return scrollSkeletonBy(dy, recycler);
+        }
+
+        // The fling has slowed down, attach views where it left off
+        if (mIsSkeletonMode) {
+            mIsSkeletonMode = false;
+            preFillGrid(Direction.NONE, 0, mSkeletonRowTop - getPaddingTop(), recycler, state);
+        }
+
         if (getChildCount() == 0 || dy == 0) {
             return 0;
         }
@@ -432,12 +1133,100 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
         final int scrolled = Math.abs(dy) > pixelsFilled ? (int) Math.signum(dy) * pixelsFilled : dy;
         offsetChildrenVertical(-scrolled);
 
+        dispatchVisibleRangeChanged();
+
         // Return value determines if a boundary has been reached (for edge effects and flings). If
         //      returned value does not match original delta (passed in), RecyclerView will draw an
         //      edge effect.
         return scrolled;
     }
 
+    @Override
+    public void onScrollStateChanged(int state) {
+        mScrollState = state;
+
+        // The fling is over, attach the views that were skipped
+        if (mIsSkeletonMode && state != RecyclerView.SCROLL_STATE_SETTLING) {
+            requestLayout();
+        }
+    }
+
+    private boolean isSkeletonScroll(int dy) {
+        return mSkeletonScrollThreshold > 0 && mRowsLimit <= 0
+                && mScrollState == RecyclerView.SCROLL_STATE_SETTLING
+                && Math.abs(dy) >= mSkeletonScrollThreshold;
+    }
+
+    // Scrolls the row model alone, without attaching any views. The first visible row and its top
+    // are all the scroll state we keep, children get attached there once the fling slows down.
+    private int scrollSkeletonBy(int dy, RecyclerView.Recycler recycler) {
+        if (!mIsSkeletonMode) {
+            mSkeletonRowTop = getChildCount() != 0 ? getDecoratedTop(getChildAt(0)) : getPaddingTop();
+            removeAndRecycleAllViews(recycler);
+            mIsSkeletonMode = true;
+        }
+
+        int row = mFirstVisibleRow;
+        int rowTop = mSkeletonRowTop;
+        int contentTop = getPaddingTop();
+        int contentBottom = contentTop + getContentHeight();
+
+        int scrolled;
+        if (dy < 0) {
+            // Don't scroll past the top of the first row
+            int distanceToTop = rowTop - contentTop;
+            for (int r = row - 1; r >= 0 && distanceToTop > dy; r--) {
+                distanceToTop -= layoutHeightForRow(r);
+            }
+            scrolled = Math.max(dy, Math.min(0, distanceToTop));
+        } else {
+            // Don't scroll past the bottom of the last row
+            int distanceToBottom = rowTop - contentBottom;
+            for (int r = row; distanceToBottom < dy && hasRow(r); r++) {
+                distanceToBottom += layoutHeightForRow(r);
+            }
+            scrolled = Math.min(dy, Math.max(0, distanceToBottom));
+        }
+        rowTop -= scrolled;
+
+        // Move the first visible row down past the rows that went off screen
+        while (rowTop + layoutHeightForRow(row) <= contentTop && hasRow(row + 1)) {
+            rowTop += layoutHeightForRow(row);
+            row++;
+        }
+
+        // Move it up for the rows that came on screen
+        while (rowTop > contentTop && row > 0) {
+            row--;
+            rowTop -= layoutHeightForRow(row);
+        }
+
+        mFirstVisibleRow = row;
+        mFirstVisiblePosition = firstChildPositionForRow(row);
+        mSkeletonRowTop = rowTop;
+
+        dispatchVisibleRangeChanged();
+        return scrolled;
+    }
+
+    // True during a fling without children, as long as the first visible row is still around
+    private boolean isSkeletonRowVisible() {
+        return mIsSkeletonMode && getChildCount() == 0 && hasRow(mFirstVisibleRow);
+    }
+
+    // Last row at least partly on screen during a fling without children, found from the top of
+    // the first visible row
+    private int findLastSkeletonRow() {
+        int contentBottom = getPaddingTop() + getContentHeight();
+        int row = mFirstVisibleRow;
+        int rowBottom = mSkeletonRowTop + layoutHeightForRow(row);
+        while (rowBottom < contentBottom && hasRow(row + 1)) {
+            row++;
+            rowBottom += layoutHeightForRow(row);
+        }
+        return row;
+    }
+
     @Override
     public RecyclerView.LayoutParams generateDefaultLayoutParams() {
         return new RecyclerView.LayoutParams(
@@ -453,11 +1242,17 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
      * there aren't any visible items.
      */
     public int findFirstVisibleItemPosition() {
-        if (getItemCount() == 0) {
-            return RecyclerView.NO_POSITION;
-        } else {
-            return mFirstVisiblePosition;
-        }
+        return findVisibleChildPosition(true, false);
+    }
+
+    /**
+     * Returns the adapter position of the first fully visible view.
+     *
+     * @return The adapter position of the first fully visible view or {@link RecyclerView#NO_POSITION}
+     * if there aren't any fully visible items.
+     */
+    public int findFirstCompletelyVisibleItemPosition() {
+        return findVisibleChildPosition(true, true);
     }
 
     /**
@@ -467,14 +1262,200 @@ public class GreedoLayoutManager extends RecyclerView.LayoutManager {
      * there aren't any visible items.
      */
     public int findLastVisibleItemPosition() {
-        if (getItemCount() == 0) {
-            return RecyclerView.NO_POSITION;
+        return findVisibleChildPosition(false, false);
+    }
+
+    /**
+     * Returns the adapter position of the last fully visible view.
+     *
+     * @return The adapter position of the last fully visible view or {@link RecyclerView#NO_POSITION}
+     * if there aren't any fully visible items.
+     */
+    public int findLastCompletelyVisibleItemPosition() {
+        return findVisibleChildPosition(false, true);
+    }
+
+    // Children are attached in adapter order starting at mFirstVisiblePosition, so we only have to
+    // skip the few children at either end that are laid out but not (fully) on screen
+    private int findVisibleChildPosition(boolean fromStart, boolean completelyVisible) {
+        int childCount = getChildCount();
+        int top = getPaddingTop();
+        int bottom = getHeight() - getPaddingBottom();
+
+        for (int i = 0; i < childCount; i++) {
+            int index = fromStart ? i : childCount - 1 - i;
+            View child = getChildAt(index);
+            int childTop = getDecoratedTop(child);
+            int childBottom = getDecoratedBottom(child);
+
+            boolean isVisible = completelyVisible
+                    ? childTop >= top && childBottom <= bottom
+                    : childTop < bottom && childBottom > top;
+            if (isVisible) {
+                return mFirstVisiblePosition + index;
+            }
+        }
+
+        return RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public View findViewByPosition(int position) {
+        // Children are attached in adapter order, so the view can be looked up by index
+        int index = position - mFirstVisiblePosition;
+        if (index >= 0 && index < getChildCount()) {
+            View child = getChildAt(index);
+            if (getPosition(child) == position) {
+                return child;
+            }
+        }
+
+        return super.findViewByPosition(position);
+    }
+
+    private void dispatchVisibleRangeChanged() {
+        if (mOnVisibleRangeChangedListener == null) return;
+
+        int firstPosition = findFirstVisibleItemPosition();
+        int lastPosition = findLastVisibleItemPosition();
+        int firstRow = RecyclerView.NO_POSITION;
+        int lastRow = RecyclerView.NO_POSITION;
+        if (isSkeletonRowVisible()) {
+            // There are no children to look at during a fling, the rows on screen are tracked
+            firstRow = mFirstVisibleRow;
+            lastRow = findLastSkeletonRow();
+            firstPosition = firstChildPositionForRow(firstRow);
+            lastPosition = lastChildPositionForRow(lastRow);
+        } else if (firstPosition != RecyclerView.NO_POSITION && lastPosition != RecyclerView.NO_POSITION) {
+            firstRow = rowForChildPosition(firstPosition);
+            lastRow = rowForChildPosition(lastPosition);
         } else {
-            return mFirstVisiblePosition + getChildCount();
+            firstPosition = lastPosition = RecyclerView.NO_POSITION;
+        }
+
+        if (firstPosition == mReportedFirstVisiblePosition && lastPosition == mReportedLastVisiblePosition
+                && firstRow == mReportedFirstVisibleRow && lastRow == mReportedLastVisibleRow) {
+            return;
+        }
+
+        int oldFirstRow = mReportedFirstVisibleRow;
+        int oldLastRow = mReportedLastVisibleRow;
+
+        mReportedFirstVisiblePosition = firstPosition;
+        mReportedLastVisiblePosition = lastPosition;
+        mReportedFirstVisibleRow = firstRow;
+        mReportedLastVisibleRow = lastRow;
+
+        mOnVisibleRangeChangedListener.onVisibleRangeChanged(firstPosition, lastPosition, firstRow, lastRow);
+        dispatchRowsExited(oldFirstRow, oldLastRow, firstRow, lastRow);
+        dispatchRowsEntered(oldFirstRow, oldLastRow, firstRow, lastRow);
+    }
+
+    // Reports the rows of the old range that aren't part of the new one
+    private void dispatchRowsExited(int oldFirstRow, int oldLastRow, int firstRow, int lastRow) {
+        if (oldFirstRow == RecyclerView.NO_POSITION) return;
+
+        if (firstRow == RecyclerView.NO_POSITION || oldLastRow < firstRow || oldFirstRow > lastRow) {
+            mOnVisibleRangeChangedListener.onRowsExited(oldFirstRow, oldLastRow);
+            return;
+        }
+
+        if (oldFirstRow < firstRow) {
+            mOnVisibleRangeChangedListener.onRowsExited(oldFirstRow, firstRow - 1);
+        }
+        if (oldLastRow > lastRow) {
+            mOnVisibleRangeChangedListener.onRowsExited(lastRow + 1, oldLastRow);
+        }
+    }
+
+    // Reports the rows of the new range that weren't part of the old one
+    private void dispatchRowsEntered(int oldFirstRow, int oldLastRow, int firstRow, int lastRow) {
+        if (firstRow == RecyclerView.NO_POSITION) return;
+
+        if (oldFirstRow == RecyclerView.NO_POSITION || lastRow < oldFirstRow || firstRow > oldLastRow) {
+            mOnVisibleRangeChangedListener.onRowsEntered(firstRow, lastRow);
+            return;
+        }
+
+        if (firstRow < oldFirstRow) {
+            mOnVisibleRangeChangedListener.onRowsEntered(firstRow, oldFirstRow - 1);
+        }
+        if (lastRow > oldLastRow) {
+            mOnVisibleRangeChangedListener.onRowsEntered(oldLastRow + 1, lastRow);
         }
     }
 
     public GreedoLayoutSizeCalculator getSizeCalculator() {
         return mSizeCalculator;
     }
-}
\ No newline at end of file
+
+    // Computes rows in bounded slices whenever the main thread's message queue goes idle, first up
+    // to a pending scroll position if there is one, then up to the end of the data set
+    private class IdleRowComputer implements MessageQueue.IdleHandler, Runnable {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private MessageQueue mQueue;
+
+        void schedule() {
+            if (mQueue == null) {
+                mQueue = Looper.myQueue();
+                mQueue.addIdleHandler(this);
+            }
+        }
+
+        void cancel() {
+            mHandler.removeCallbacks(this);
+            if (mQueue != null) {
+                mQueue.removeIdleHandler(this);
+                mQueue = null;
+            }
+        }
+
+        // Idle handlers only run once per idle period, even if they ask to be kept. Posting this
+        // ends the period, so the next slice runs as soon as the queue is idle again.
+        @Override
+        public void run() {
+            schedule();
+        }
+
+        @Override
+        public boolean queueIdle() {
+            if (mSizeCalculator.getContentWidth() <= 0 || mIdleComputeBudgetNanos == 0) {
+                mQueue = null;
+                return false;
+            }
+
+            // The delegate already answers for the new data, but the rows haven't been shifted for
+            // it yet. The layout that dispatches the changes schedules us again.
+            if (mRecyclerView != null && mRecyclerView.hasPendingAdapterUpdates()) {
+                mQueue = null;
+                return false;
+            }
+
+            long deadline = System.nanoTime() + mIdleComputeBudgetNanos;
+
+            if (mIdleComputeScrollPosition != INVALID_SCROLL_POSITION) {
+                int position = mIdleComputeScrollPosition;
+                if (position >= getItemCount()) {
+                    mIdleComputeScrollPosition = INVALID_SCROLL_POSITION;
+                } else if (mSizeCalculator.computeRowsUntil(calculatorPosition(position), deadline)) {
+                    scrollToPositionWithOffset(position, mIdleComputeScrollOffset);
+                }
+
+                // Leave the rest of the data set for the next slice, the scroll needs a layout
+            } else {
+                mSizeCalculator.computeRowsUntil(-1, deadline);
+            }
+
+            boolean hasMoreRows = mIdleComputeScrollPosition != INVALID_SCROLL_POSITION
+                    || !mSizeCalculator.isComplete();
+            if (hasMoreRows) {
+                mHandler.post(this);
+            }
+            mQueue = null;
+            return false;
+        }
+    }
+}
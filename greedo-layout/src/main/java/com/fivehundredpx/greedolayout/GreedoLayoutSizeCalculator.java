@@ -1,6 +1,7 @@
 package com.fivehundredpx.greedolayout;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -12,6 +13,18 @@ public class GreedoLayoutSizeCalculator {
         double aspectRatioForIndex(int index);
     }
 
+    /**
+     * How the last row is sized when there aren't enough items left to fill it. Such a row is
+     * provisional, it gets recomputed once more items are added.
+     */
+    public enum TailRowPolicy {
+        // Children keep their natural size at the max row height, leaving the end of the row empty
+        NATURAL,
+        // Children are stretched to fill the content width. In variable height mode this makes the
+        // row taller than the max row height.
+        JUSTIFIED
+    }
+
     private static final int DEFAULT_MAX_ROW_HEIGHT = 600;
     private int mMaxRowHeight = DEFAULT_MAX_ROW_HEIGHT;
 
@@ -24,24 +37,83 @@ public class GreedoLayoutSizeCalculator {
 
     private boolean mIsFixedHeight = false;
 
+    // Without an item count the delegate is queried for as many items as needed to fill a row
+    private static final int UNKNOWN_ITEM_COUNT = -1;
+    private int mItemCount = UNKNOWN_ITEM_COUNT;
+
+    private TailRowPolicy mTailRowPolicy = TailRowPolicy.NATURAL;
+
+    // Sorted heights that rows snap to in variable height mode, or null to keep exact heights
+    private int[] mRowHeightBuckets;
+
+    // Flag to indicate the last computed row ran out of items before it was full
+    private boolean mIsTailRowProvisional;
+
     private SizeCalculatorDelegate mSizeCalculatorDelegate;
 
+    private GreedoLayoutDiskCache mLayoutCache;
+
     private List<Size> mSizeForChildAtPosition;
     private List<Integer> mFirstChildPositionForRow;
     private List<Integer> mRowForChildPosition;
 
+    // Cumulative top of each row, filled in lazily as rows are queried
+    private List<Integer> mTopForRow;
+
+    // Rows dropped by adapter changes that can be reused once recomputed rows line up with them
+    private StashedRows mStashedRows = new StashedRows();
+
+    // Aspect ratios queried from the delegate so far, NaN for the ones to query again after an
+    // adapter change. They're kept when the configuration changes, so rows are re-broken without
+    // querying the delegate again.
+    private double[] mAspectRatios = new double[0];
+    private int mAspectRatioCount = 0;
+
+    // Aspect ratios past this position can't be queried, while rows are computed off the main
+    // thread from the aspect ratios already known
+    private int mAspectRatioLimit = Integer.MAX_VALUE;
+
+    // Prefix sums over the aspect ratios from mPrefixSumBase on: the sum of the aspect ratios of
+    // the items from the base up to each position, full row views aside, and the number of full row
+    // views among them. The aspect ratio of any run of items is then the difference of two sums,
+    // which lets us binary search for row breaks. Index i holds the sums up to position
+    // mPrefixSumBase + i, valid up to and including mPrefixSumCount. The base moves to the first
+    // row computed past them, so rows read from the layout cache or reused from the stash never
+    // need the aspect ratios of the items before them.
+    private double[] mAspectRatioSums = new double[1];
+    private int[] mFullRowViewCounts = new int[1];
+    private int mPrefixSumBase = 0;
+    private int mPrefixSumCount = 0;
+
     public GreedoLayoutSizeCalculator(SizeCalculatorDelegate sizeCalculatorDelegate) {
         mSizeCalculatorDelegate = sizeCalculatorDelegate;
 
         mSizeForChildAtPosition = new ArrayList<>();
         mFirstChildPositionForRow = new ArrayList<>();
         mRowForChildPosition = new ArrayList<>();
+        mTopForRow = new ArrayList<>();
+    }
+
+    /**
+     * Swap the delegate used to query aspect ratios. Rows that were already computed are kept, so
+     * the new delegate must describe the same data set as the previous one.
+     */
+    public void setSizeCalculatorDelegate(SizeCalculatorDelegate sizeCalculatorDelegate) {
+        mSizeCalculatorDelegate = sizeCalculatorDelegate;
     }
 
+    public SizeCalculatorDelegate getSizeCalculatorDelegate() {
+        return mSizeCalculatorDelegate;
+    }
+
+    /**
+     * Set the width rows have to fill. Rows are re-broken for the new width from the aspect ratios
+     * already queried, the same goes for the max row height and mode.
+     */
     public void setContentWidth(int contentWidth) {
         if (mContentWidth != contentWidth) {
             mContentWidth = contentWidth;
-            reset();
+            clearRows();
         }
     }
 
@@ -52,17 +124,276 @@ public class GreedoLayoutSizeCalculator {
     public void setMaxRowHeight(int maxRowHeight) {
         if (mMaxRowHeight != maxRowHeight) {
             mMaxRowHeight = maxRowHeight;
-            reset();
+            clearRows();
         }
     }
 
+    public int getMaxRowHeight() {
+        return mMaxRowHeight;
+    }
+
     public void setFixedHeight(boolean fixedHeight) {
         if (mIsFixedHeight != fixedHeight) {
             mIsFixedHeight = fixedHeight;
-            reset();
+            clearRows();
         }
     }
 
+    public boolean isFixedHeight() {
+        return mIsFixedHeight;
+    }
+
+    /**
+     * Snap row heights to the nearest of the given heights in variable height mode, so that item
+     * sizes repeat and decoded bitmaps can be reused from bitmap pools and size keyed caches. Each
+     * row still fills the content width exactly, its children are stretched or squeezed to absorb
+     * the difference the same way fixed height rows are. The further apart the heights, the more
+     * children get distorted. Has no effect in fixed height mode.
+     *
+     * @param rowHeightBuckets Heights rows can have, or none to keep exact row heights.
+     */
+    public void setRowHeightBuckets(int... rowHeightBuckets) {
+        int[] buckets = null;
+        if (rowHeightBuckets != null && rowHeightBuckets.length > 0) {
+            buckets = rowHeightBuckets.clone();
+            Arrays.sort(buckets);
+            if (buckets[0] <= 0) {
+                throw new IllegalArgumentException("Row height buckets must be greater than 0");
+            }
+        }
+
+        if (!Arrays.equals(mRowHeightBuckets, buckets)) {
+            mRowHeightBuckets = buckets;
+            clearRows();
+        }
+    }
+
+    public int[] getRowHeightBuckets() {
+        return mRowHeightBuckets == null ? new int[0] : mRowHeightBuckets.clone();
+    }
+
+    /**
+     * Set the number of items in the data set. The delegate is never queried for an index past
+     * the item count, and the last row gets sized following the tail row policy instead.
+     *
+     * Growing the item count only recomputes the last row, see {@link #appendItems(int)}.
+     *
+     * @param itemCount Number of items in the data set.
+     */
+    public void setItemCount(int itemCount) {
+        if (itemCount < 0) {
+            throw new IllegalArgumentException("Item count must not be negative");
+        }
+
+        if (mItemCount != itemCount) {
+            int firstChangedPosition = mItemCount == UNKNOWN_ITEM_COUNT
+                    ? itemCount : Math.min(mItemCount, itemCount);
+            if (itemCount < mItemCount) {
+                invalidateLayoutCacheFromPosition(itemCount);
+            }
+            truncateAspectRatios(firstChangedPosition);
+            mItemCount = itemCount;
+            invalidateFromPosition(firstChangedPosition);
+        }
+    }
+
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    // Returns a calculator for the same data set and width with the given configuration, which
+    // starts out with the aspect ratios (and prefix sums) known so far but no rows. It doesn't share
+    // any state with this one, and has no layout cache.
+    GreedoLayoutSizeCalculator copyWithConfiguration(GreedoLayoutConfiguration configuration) {
+        GreedoLayoutSizeCalculator sizeCalculator = new GreedoLayoutSizeCalculator(mSizeCalculatorDelegate);
+        sizeCalculator.mContentWidth = mContentWidth;
+        sizeCalculator.mItemCount = mItemCount;
+        sizeCalculator.setConfiguration(configuration);
+
+        // Only the aspect ratios up to the first one that has to be queried again
+        int aspectRatioCount = 0;
+        while (aspectRatioCount < mAspectRatioCount && !Double.isNaN(mAspectRatios[aspectRatioCount])) {
+            aspectRatioCount++;
+        }
+        sizeCalculator.mAspectRatios = Arrays.copyOf(mAspectRatios, aspectRatioCount);
+        sizeCalculator.mAspectRatioCount = aspectRatioCount;
+
+        int prefixSumCount = Math.max(0, Math.min(mPrefixSumCount, aspectRatioCount - mPrefixSumBase));
+        sizeCalculator.mAspectRatioSums = Arrays.copyOf(mAspectRatioSums, prefixSumCount + 1);
+        sizeCalculator.mFullRowViewCounts = Arrays.copyOf(mFullRowViewCounts, prefixSumCount + 1);
+        sizeCalculator.mPrefixSumBase = mPrefixSumBase;
+        sizeCalculator.mPrefixSumCount = prefixSumCount;
+        return sizeCalculator;
+    }
+
+    // Queries the delegate for the aspect ratios before the given position that aren't known, such
+    // as the ones of changed items or the ones skipped by rows read from the layout cache, so that
+    // a copy can compute the rows up to it
+    void queryUnknownAspectRatios(int endPosition) {
+        if (mItemCount != UNKNOWN_ITEM_COUNT) {
+            endPosition = Math.min(endPosition, mItemCount);
+        }
+        for (int position = 0; position < endPosition; position++) {
+            aspectRatioForPosition(position);
+        }
+    }
+
+    // Computes the rows up to the given position, then the rows after it until they add up to the
+    // given height, from the aspect ratios already known. The delegate is never queried, so this
+    // can run off the main thread on a calculator no one else uses. Stops at the first row that
+    // needs an aspect ratio that isn't known.
+    void computeRowsFromKnownAspectRatios(int position, int heightPastPosition) {
+        mAspectRatioLimit = mAspectRatioCount;
+        try {
+            while (hasUncomputedItems() && getHeightPastPosition(position) < heightPastPosition) {
+                // A row that runs out of known aspect ratios can only be computed if the items
+                // ran out as well
+                boolean isRowKnown = findRowEnd(mSizeForChildAtPosition.size()) >= 0
+                        || (mItemCount != UNKNOWN_ITEM_COUNT && mItemCount <= mAspectRatioLimit);
+                if (!isRowKnown) break;
+
+                computeNextRowFromDelegate();
+            }
+        } finally {
+            mAspectRatioLimit = Integer.MAX_VALUE;
+        }
+    }
+
+    // Height of the computed rows after the one holding the given position, -1 if it isn't computed
+    private int getHeightPastPosition(int position) {
+        if (position >= mSizeForChildAtPosition.size()) return -1;
+
+        int row = mRowForChildPosition.get(position);
+        int lastRow = mFirstChildPositionForRow.size() - 1;
+        return getRowTop(lastRow) + getRowHeight(lastRow) - getRowTop(row) - getRowHeight(row);
+    }
+
+    /**
+     * Set a disk cache that rows are read from before computing them, and that newly computed rows
+     * are written to. See {@link GreedoLayoutDiskCache} for when its rows are trusted.
+     *
+     * @param layoutCache The cache, or null to stop using one.
+     */
+    public void setLayoutCache(GreedoLayoutDiskCache layoutCache) {
+        mLayoutCache = layoutCache;
+    }
+
+    public GreedoLayoutDiskCache getLayoutCache() {
+        return mLayoutCache;
+    }
+
+    /**
+     * Set how the last row is sized when there aren't enough items left to fill it. Defaults to
+     * {@link TailRowPolicy#NATURAL}. Only applies once an item count is set.
+     */
+    public void setTailRowPolicy(TailRowPolicy tailRowPolicy) {
+        if (mTailRowPolicy != tailRowPolicy) {
+            mTailRowPolicy = tailRowPolicy;
+            if (mIsTailRowProvisional) {
+                invalidateFromPosition(mSizeForChildAtPosition.size());
+            }
+        }
+    }
+
+    public TailRowPolicy getTailRowPolicy() {
+        return mTailRowPolicy;
+    }
+
+    /**
+     * Apply every setting of the given configuration at once. Rows are dropped at most once, and
+     * only if a setting they depend on changed.
+     */
+    public void setConfiguration(GreedoLayoutConfiguration configuration) {
+        int[] rowHeightBuckets = configuration.getRowHeightBuckets();
+        if (rowHeightBuckets.length == 0) {
+            rowHeightBuckets = null;
+        }
+
+        boolean isRowsChanged = mMaxRowHeight != configuration.getMaxRowHeight()
+                || mIsFixedHeight != configuration.isFixedHeight()
+                || !Arrays.equals(mRowHeightBuckets, rowHeightBuckets);
+
+        mMaxRowHeight = configuration.getMaxRowHeight();
+        mIsFixedHeight = configuration.isFixedHeight();
+        mRowHeightBuckets = rowHeightBuckets;
+        if (isRowsChanged) {
+            mTailRowPolicy = configuration.getTailRowPolicy();
+            clearRows();
+        } else {
+            setTailRowPolicy(configuration.getTailRowPolicy());
+        }
+    }
+
+    public GreedoLayoutConfiguration getConfiguration() {
+        return new GreedoLayoutConfiguration(mMaxRowHeight, mIsFixedHeight)
+                .withRowHeightBuckets(mRowHeightBuckets)
+                .withTailRowPolicy(mTailRowPolicy);
+    }
+
+    /**
+     * Returns true if the given row is the last one and there weren't enough items to fill it.
+     * Its sizes follow the tail row policy and will change once more items are added.
+     */
+    public boolean isRowProvisional(int row) {
+        return mIsTailRowProvisional && row == mFirstChildPositionForRow.size() - 1;
+    }
+
+    /**
+     * Returns true if the size of the given position has already been computed, in which case
+     * querying it costs no calculations.
+     */
+    public boolean isPositionComputed(int position) {
+        return position < mSizeForChildAtPosition.size();
+    }
+
+    /**
+     * Returns true if every item has been computed. Without an item count there's always more to
+     * compute.
+     */
+    public boolean isComplete() {
+        return !hasUncomputedItems();
+    }
+
+    /**
+     * Computes rows until the given position is computed or the deadline has passed, whichever
+     * comes first. Computation is resumable, so this can be called repeatedly with short deadlines
+     * to spread a large computation over several frames.
+     *
+     * @param position Last position to compute, or -1 to compute every item. Computing every item
+     *                 requires an item count.
+     * @param deadlineNanos Value of {@link System#nanoTime()} after which no new row is started.
+     * @return true if the position (or every item) has been computed.
+     */
+    public boolean computeRowsUntil(int position, long deadlineNanos) {
+        int lastPosition = position;
+        if (position < 0) {
+            if (mItemCount == UNKNOWN_ITEM_COUNT) {
+                throw new IllegalStateException("Cannot compute every item without an item count. Did you forget to set it?");
+            }
+            lastPosition = mItemCount - 1;
+        } else if (mItemCount != UNKNOWN_ITEM_COUNT) {
+            lastPosition = Math.min(position, mItemCount - 1);
+        }
+
+        while (lastPosition >= mSizeForChildAtPosition.size()) {
+            if (System.nanoTime() - deadlineNanos >= 0) return false;
+            computeNextRow();
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given row exists, computing the rows up to it if needed. Without an item
+     * count the delegate is expected to supply items for any row, so every row exists.
+     */
+    public boolean hasRow(int row) {
+        while (row >= mFirstChildPositionForRow.size()) {
+            if (!hasUncomputedItems()) return false;
+            computeNextRow();
+        }
+        return true;
+    }
+
     public Size sizeForChildAtPosition(int position) {
         if (position >= mSizeForChildAtPosition.size()) {
             computeChildSizesUpToPosition(position);
@@ -78,6 +409,66 @@ public class GreedoLayoutSizeCalculator {
         return mFirstChildPositionForRow.get(row);
     }
 
+    /**
+     * Returns the position of the last child in the given row. Only the rows up to and including
+     * {@code row} are computed, the row after it doesn't have to be known.
+     */
+    public int getLastChildPositionForRow(int row) {
+        if (row >= mFirstChildPositionForRow.size()) {
+            computeFirstChildPositionsUpToRow(row);
+        }
+
+        if (row + 1 < mFirstChildPositionForRow.size()) {
+            return mFirstChildPositionForRow.get(row + 1) - 1;
+        }
+        return mSizeForChildAtPosition.size() - 1;
+    }
+
+    /**
+     * Returns the number of rows computed so far. Rows past it are computed as they are queried.
+     */
+    public int getComputedRowCount() {
+        return mFirstChildPositionForRow.size();
+    }
+
+    /**
+     * Returns the height of the given row, every child in a row shares it.
+     */
+    public int getRowHeight(int row) {
+        return sizeForChildAtPosition(getFirstChildPositionForRow(row)).getHeight();
+    }
+
+    /**
+     * Returns the top of the given row, that is the sum of the heights of every row before it.
+     */
+    public int getRowTop(int row) {
+        if (row >= mTopForRow.size()) {
+            computeFirstChildPositionsUpToRow(row);
+
+            if (mTopForRow.isEmpty()) {
+                mTopForRow.add(0);
+            }
+            while (row >= mTopForRow.size()) {
+                int previousRow = mTopForRow.size() - 1;
+                mTopForRow.add(mTopForRow.get(previousRow) + getRowHeight(previousRow));
+            }
+        }
+        return mTopForRow.get(row);
+    }
+
+    /**
+     * Returns the left offset of the given position from the start of its row.
+     */
+    public int getLeftForChildPosition(int position) {
+        int firstPosition = getFirstChildPositionForRow(getRowForChildPosition(position));
+
+        int left = 0;
+        for (int i = firstPosition; i < position; i++) {
+            left += mSizeForChildAtPosition.get(i).getWidth();
+        }
+        return left;
+    }
+
     public int getRowForChildPosition(int position) {
         if (position >= mRowForChildPosition.size()) {
             computeChildSizesUpToPosition(position);
@@ -86,136 +477,572 @@ public class GreedoLayoutSizeCalculator {
         return mRowForChildPosition.get(position);
     }
 
+    /**
+     * Drop every computed row, along with the aspect ratios queried so far. Call when the whole
+     * data set changes.
+     */
     public void reset() {
+        clearRows();
+        truncateAspectRatios(0);
+    }
+
+    // Drops every computed row, the aspect ratios stay so rows are re-broken from them
+    private void clearRows() {
         mSizeForChildAtPosition.clear();
         mFirstChildPositionForRow.clear();
         mRowForChildPosition.clear();
+        mTopForRow.clear();
+        mIsTailRowProvisional = false;
+        mStashedRows = new StashedRows();
+    }
+
+    /**
+     * Add items to the end of the data set. Only the last row, which may have been sized
+     * provisionally, is recomputed; every row before it is kept. Requires an item count to be set.
+     *
+     * @param itemCount Number of items appended.
+     */
+    public void appendItems(int itemCount) {
+        if (mItemCount == UNKNOWN_ITEM_COUNT) {
+            throw new IllegalStateException("Cannot append items without an item count. Did you forget to set it?");
+        }
+
+        onItemsAdded(mItemCount, itemCount);
+    }
+
+    public void onItemsAdded(int positionStart, int itemCount) {
+        // Cached rows stay valid when items are appended, the data set version covers them
+        if (positionStart != mItemCount) {
+            invalidateLayoutCacheFromPosition(positionStart);
+        }
+        if (mItemCount != UNKNOWN_ITEM_COUNT) {
+            mItemCount += itemCount;
+        }
+        replaceItems(positionStart, 0, itemCount);
+    }
+
+    public void onItemsRemoved(int positionStart, int itemCount) {
+        if (mItemCount != UNKNOWN_ITEM_COUNT) {
+            mItemCount = Math.max(0, mItemCount - itemCount);
+        }
+        invalidateLayoutCacheFromPosition(positionStart);
+        replaceItems(positionStart, itemCount, 0);
+    }
+
+    public void onItemsUpdated(int positionStart, int itemCount) {
+        invalidateLayoutCacheFromPosition(positionStart);
+        replaceItems(positionStart, itemCount, itemCount);
+    }
+
+    public void onItemsMoved(int from, int to, int itemCount) {
+        invalidateLayoutCacheFromPosition(Math.min(from, to));
+        replaceItems(from, itemCount, 0);
+        replaceItems(to, 0, itemCount);
+    }
+
+    // Drops the rows affected by replacing removedCount items at the given position with
+    // insertedCount other items. Rows past the change are stashed instead, with their positions
+    // shifted: a row only depends on the items from its first child on, so once a recomputed row
+    // starts where a stashed one does, the stashed rows from there on can be reused as they are.
+    // Several changes in a row are fine, rows are only recomputed once the adapter is up to date.
+    private void replaceItems(int position, int removedCount, int insertedCount) {
+        StashedRows stashedRows = new StashedRows();
+
+        // Rows that may be affected come first, followed by the rows stashed by earlier changes
+        int firstInvalidPosition = Math.max(0, position - 1);
+        if (firstInvalidPosition < mRowForChildPosition.size()) {
+            int firstRow = mRowForChildPosition.get(firstInvalidPosition);
+            for (int row = firstRow; row < mFirstChildPositionForRow.size(); row++) {
+                int firstPosition = mFirstChildPositionForRow.get(row);
+                int endPosition = row + 1 < mFirstChildPositionForRow.size()
+                        ? mFirstChildPositionForRow.get(row + 1) : mSizeForChildAtPosition.size();
+                stashedRows.stashShifted(firstPosition, mSizeForChildAtPosition.subList(firstPosition, endPosition),
+                        isRowProvisional(row), position, removedCount, insertedCount);
+            }
+        }
+        // Stashed rows that start before the end of the computed rows overlap them, the computed
+        // rows win
+        int computedEndPosition = mSizeForChildAtPosition.size();
+        for (int row = mStashedRows.mNextRow; row < mStashedRows.getRowCount(); row++) {
+            if (mStashedRows.mFirstChildPositionForRow.get(row) < computedEndPosition) continue;
+
+            stashedRows.stashShifted(mStashedRows.mFirstChildPositionForRow.get(row), mStashedRows.getSizesForRow(row),
+                    mStashedRows.isRowProvisional(row), position, removedCount, insertedCount);
+        }
+
+        dropRowsFromPosition(position);
+        mStashedRows = stashedRows;
+        replaceAspectRatios(position, removedCount, insertedCount);
+    }
+
+    // Keeps the aspect ratios of the items the change leaves alone, shifted to their new positions.
+    // The prefix sums from the change on are recomputed as they're needed.
+    private void replaceAspectRatios(int position, int removedCount, int insertedCount) {
+        truncatePrefixSums(position);
+        if (position >= mAspectRatioCount) return;
+
+        int removedEnd = Math.min(position + removedCount, mAspectRatioCount);
+        int shiftedCount = mAspectRatioCount - removedEnd;
+        ensureAspectRatioCapacity(position + insertedCount + shiftedCount);
+
+        System.arraycopy(mAspectRatios, removedEnd, mAspectRatios, position + insertedCount, shiftedCount);
+        Arrays.fill(mAspectRatios, position, position + insertedCount, Double.NaN);
+        mAspectRatioCount = position + insertedCount + shiftedCount;
+    }
+
+    private void truncateAspectRatios(int position) {
+        mAspectRatioCount = Math.min(mAspectRatioCount, position);
+        truncatePrefixSums(position);
+    }
+
+    // Drops the prefix sums from the given position on
+    private void truncatePrefixSums(int position) {
+        mPrefixSumCount = Math.max(0, Math.min(mPrefixSumCount, position - mPrefixSumBase));
+    }
+
+    private void ensureAspectRatioCapacity(int capacity) {
+        if (capacity > mAspectRatios.length) {
+            mAspectRatios = Arrays.copyOf(mAspectRatios, Math.max(capacity, 2 * mAspectRatios.length));
+        }
+    }
+
+    private double aspectRatioForPosition(int position) {
+        if (position >= mAspectRatioCount) {
+            ensureAspectRatioCapacity(position + 1);
+            Arrays.fill(mAspectRatios, mAspectRatioCount, position + 1, Double.NaN);
+            mAspectRatioCount = position + 1;
+        }
+
+        double aspectRatio = mAspectRatios[position];
+        if (Double.isNaN(aspectRatio)) {
+            aspectRatio = mSizeCalculatorDelegate.aspectRatioForIndex(position);
+            mAspectRatios[position] = aspectRatio;
+        }
+        return aspectRatio;
+    }
+
+    // Starts the prefix sums over from the given position, unless they already reach it
+    private void ensurePrefixSumsFrom(int position) {
+        if (position < mPrefixSumBase || position > mPrefixSumBase + mPrefixSumCount) {
+            mPrefixSumBase = position;
+            mPrefixSumCount = 0;
+        }
+    }
+
+    // Extends the prefix sums so they cover every position before the given end position
+    private void computePrefixSumsUpTo(int endPosition) {
+        int endIndex = endPosition - mPrefixSumBase;
+        if (endIndex <= mPrefixSumCount) return;
+
+        if (endIndex >= mAspectRatioSums.length) {
+            int capacity = Math.max(endIndex + 1, 2 * mAspectRatioSums.length);
+            mAspectRatioSums = Arrays.copyOf(mAspectRatioSums, capacity);
+            mFullRowViewCounts = Arrays.copyOf(mFullRowViewCounts, capacity);
+        }
+
+        for (int index = mPrefixSumCount; index < endIndex; index++) {
+            double aspectRatio = aspectRatioForPosition(mPrefixSumBase + index);
+            boolean isFullRowView = aspectRatio < 0;
+            mAspectRatioSums[index + 1] = mAspectRatioSums[index] + (isFullRowView ? 0.0 : aspectRatio);
+            mFullRowViewCounts[index + 1] = mFullRowViewCounts[index] + (isFullRowView ? 1 : 0);
+        }
+        mPrefixSumCount = endIndex;
+    }
+
+    // Aspect ratio of the items in [firstPosition, endPosition), leaving full row views out. Note
+    // that a difference of prefix sums can be off by a rounding error from adding the items up one
+    // by one, so a row that fills up right at the threshold may break one item differently than it
+    // would have before prefix sums.
+    private double aspectRatioForRange(int firstPosition, int endPosition) {
+        return mAspectRatioSums[endPosition - mPrefixSumBase] - mAspectRatioSums[firstPosition - mPrefixSumBase];
+    }
+
+    // True if the items in [firstPosition, endPosition) fill a row or hold a full row view, in
+    // which case the row can't grow any further. Growing the range never turns this false again.
+    private boolean isRowComplete(int firstPosition, int endPosition) {
+        int fullRowViewCount = mFullRowViewCounts[endPosition - mPrefixSumBase]
+                - mFullRowViewCounts[firstPosition - mPrefixSumBase];
+        if (fullRowViewCount > 0) {
+            return true;
+        }
+        return isRowFull(aspectRatioForRange(firstPosition, endPosition));
+    }
+
+    private boolean isRowFull(double rowAspectRatio) {
+        if (mIsFixedHeight) {
+            return calculateWidth(mMaxRowHeight, rowAspectRatio) > mContentWidth;
+        }
+        return calculateHeight(mContentWidth, rowAspectRatio) <= mMaxRowHeight;
+    }
+
+    // Returns the end (exclusive) of the shortest run of items from the given position that is a
+    // complete row, or -1 if the items run out first. Gallops ahead over the prefix sums, which
+    // queries the delegate a few items past the row at most, then binary searches for the end.
+    private int findRowEnd(int firstPosition) {
+        int lastEndPosition = mItemCount == UNKNOWN_ITEM_COUNT ? Integer.MAX_VALUE : mItemCount;
+        lastEndPosition = Math.min(lastEndPosition, mAspectRatioLimit);
+        if (lastEndPosition <= firstPosition) return -1;
+
+        ensurePrefixSumsFrom(firstPosition);
+
+        // The row is never complete at low, always complete at high
+        int low = firstPosition;
+        int high = firstPosition + 1;
+        while (true) {
+            high = Math.min(high, lastEndPosition);
+            computePrefixSumsUpTo(high);
+            if (isRowComplete(firstPosition, high)) break;
+            if (high == lastEndPosition) return -1;
+
+            low = high;
+            high = firstPosition + 2 * (high - firstPosition);
+        }
+
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (isRowComplete(firstPosition, middle)) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+        return high;
+    }
+
+    private List<Double> aspectRatiosForRange(int firstPosition, int endPosition) {
+        List<Double> aspectRatios = new ArrayList<>(endPosition - firstPosition);
+        for (int position = firstPosition; position < endPosition; position++) {
+            aspectRatios.add(mAspectRatios[position]);
+        }
+        return aspectRatios;
+    }
+
+    // Drops every row that could be affected by a change at the given position, without keeping
+    // any of them around
+    private void invalidateFromPosition(int position) {
+        dropRowsFromPosition(position);
+        mStashedRows = new StashedRows();
+    }
+
+    // In fixed height mode a row can end because the child after it didn't fit, so the row holding
+    // the child before the given position is dropped as well
+    private void dropRowsFromPosition(int position) {
+        int firstInvalidPosition = Math.max(0, position - 1);
+        if (firstInvalidPosition >= mRowForChildPosition.size()) {
+            return;
+        }
+
+        int row = mRowForChildPosition.get(firstInvalidPosition);
+        int firstPosition = mFirstChildPositionForRow.get(row);
+
+        mFirstChildPositionForRow.subList(row, mFirstChildPositionForRow.size()).clear();
+        mSizeForChildAtPosition.subList(firstPosition, mSizeForChildAtPosition.size()).clear();
+        mRowForChildPosition.subList(firstPosition, mRowForChildPosition.size()).clear();
+        mIsTailRowProvisional = false;
+
+        // The top of the first dropped row only depends on the rows before it
+        if (mTopForRow.size() > row + 1) {
+            mTopForRow.subList(row + 1, mTopForRow.size()).clear();
+        }
+    }
+
+    // Same as invalidateFromPosition(int) for the rows stored in the layout cache, which may reach
+    // well past the rows computed so far
+    private void invalidateLayoutCacheFromPosition(int position) {
+        if (mLayoutCache != null) {
+            mLayoutCache.truncateFromPosition(Math.max(0, position - 1));
+        }
+    }
+
+    private boolean hasUncomputedItems() {
+        return mItemCount == UNKNOWN_ITEM_COUNT || mSizeForChildAtPosition.size() < mItemCount;
     }
 
     private void computeFirstChildPositionsUpToRow(int row) {
-        // TODO: Rewrite this? Looks dangerous but in reality should be fine. I'd like something
-        //       less alarming though.
-        while (row >= mFirstChildPositionForRow.size()) {
-            computeChildSizesUpToPosition(mSizeForChildAtPosition.size() + 1);
+        if (!hasRow(row)) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Row %d is out of bounds, there are only %d rows", row, mFirstChildPositionForRow.size()));
         }
     }
 
     private void computeChildSizesUpToPosition(int lastPosition) {
+        if (mItemCount != UNKNOWN_ITEM_COUNT && lastPosition >= mItemCount) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Position %d is out of bounds, item count is %d", lastPosition, mItemCount));
+        }
+
+        while (lastPosition >= mSizeForChildAtPosition.size()) {
+            computeNextRow();
+        }
+    }
+
+    private void computeNextRow() {
         if (mContentWidth == INVALID_CONTENT_WIDTH) {
             throw new RuntimeException("Invalid content width. Did you forget to set it?");
         }
 
+        if (mLayoutCache == null) {
+            if (!readNextRowFromStash()) {
+                computeNextRowFromDelegate();
+            }
+            return;
+        }
+
+        mLayoutCache.bind(mContentWidth, mMaxRowHeight, getLayoutMode());
+        if (readNextRowFromStash()) {
+            writeRowsToLayoutCache();
+        } else if (!readNextRowFromLayoutCache()) {
+            computeNextRowFromDelegate();
+            writeRowsToLayoutCache();
+        }
+    }
+
+    // Identifies the settings, other than the content width and max row height, that rows stored
+    // in the layout cache depend on
+    private int getLayoutMode() {
+        return 31 * Arrays.hashCode(mRowHeightBuckets) + (mIsFixedHeight ? 1 : 0);
+    }
+
+    private boolean readNextRowFromLayoutCache() {
+        int row = mFirstChildPositionForRow.size();
+        Size[] rowSizes = mLayoutCache.readRow(row);
+        if (rowSizes == null) return false;
+
+        // The cached row was computed with items that aren't there (yet)
+        int firstPosition = mSizeForChildAtPosition.size();
+        if (mItemCount != UNKNOWN_ITEM_COUNT && firstPosition + rowSizes.length > mItemCount) {
+            return false;
+        }
+
+        mFirstChildPositionForRow.add(firstPosition);
+        for (Size size : rowSizes) {
+            mSizeForChildAtPosition.add(size);
+            mRowForChildPosition.add(row);
+        }
+        return true;
+    }
+
+    // Reuses the next stashed row if it starts right after the last computed child
+    private boolean readNextRowFromStash() {
+        int firstPosition = mSizeForChildAtPosition.size();
+
+        // Rows that were recomputed went past these without lining up with them
+        StashedRows stashedRows = mStashedRows;
+        while (stashedRows.mNextRow < stashedRows.getRowCount()
+                && stashedRows.mFirstChildPositionForRow.get(stashedRows.mNextRow) < firstPosition) {
+            stashedRows.mNextRow++;
+        }
+
+        if (stashedRows.mNextRow == stashedRows.getRowCount()
+                || stashedRows.mFirstChildPositionForRow.get(stashedRows.mNextRow) != firstPosition) {
+            return false;
+        }
+
+        // The stashed row was computed with items that aren't there anymore
+        List<Size> rowSizes = stashedRows.getSizesForRow(stashedRows.mNextRow);
+        if (mItemCount != UNKNOWN_ITEM_COUNT && firstPosition + rowSizes.size() > mItemCount) {
+            mStashedRows = new StashedRows();
+            return false;
+        }
+
+        int row = mFirstChildPositionForRow.size();
+        mFirstChildPositionForRow.add(firstPosition);
+        mSizeForChildAtPosition.addAll(rowSizes);
+        for (int i = 0; i < rowSizes.size(); i++) {
+            mRowForChildPosition.add(row);
+        }
+        mIsTailRowProvisional = stashedRows.isRowProvisional(stashedRows.mNextRow);
+
+        stashedRows.mNextRow++;
+        return true;
+    }
+
+    // Stores every computed row the layout cache doesn't have yet, except a provisional one
+    private void writeRowsToLayoutCache() {
+        int rowCount = mFirstChildPositionForRow.size() - (mIsTailRowProvisional ? 1 : 0);
+        for (int row = mLayoutCache.getRowCount(); row < rowCount; row++) {
+            int firstPosition = mFirstChildPositionForRow.get(row);
+            int endPosition = row + 1 < mFirstChildPositionForRow.size()
+                    ? mFirstChildPositionForRow.get(row + 1) : mSizeForChildAtPosition.size();
+            mLayoutCache.appendRow(mSizeForChildAtPosition.subList(firstPosition, endPosition));
+
+            // The cache couldn't store the row, don't bother with the rest
+            if (mLayoutCache.getRowCount() != row + 1) break;
+        }
+    }
+
+    // Computes the sizes for the children of the first row that hasn't been computed yet. If that
+    // row is cut short by a full row view, the full row view's own row is computed as well.
+    private void computeNextRowFromDelegate() {
         if (mSizeCalculatorDelegate == null) {
             throw new RuntimeException("Size calculator delegate is missing. Did you forget to set it?");
         }
 
-        int firstUncomputedChildPosition = mSizeForChildAtPosition.size();
-        int row = mRowForChildPosition.size() > 0
-                ? mRowForChildPosition.get(mRowForChildPosition.size() - 1) + 1 : 0;
+        int row = mFirstChildPositionForRow.size();
+        int firstPosition = mSizeForChildAtPosition.size();
 
-        double currentRowAspectRatio = 0.0;
-        List<Double> itemAspectRatios = new ArrayList<>();
-        int currentRowHeight = mIsFixedHeight ? mMaxRowHeight : Integer.MAX_VALUE;
+        int rowEndPosition = findRowEnd(firstPosition);
+        if (rowEndPosition < 0) {
+            // Ran out of items before the row was full
+            computeProvisionalRow(row, aspectRatiosForRange(firstPosition, mItemCount),
+                    aspectRatioForRange(firstPosition, mItemCount));
+            return;
+        }
 
-        int currentRowWidth = 0;
-        int pos = firstUncomputedChildPosition;
-        while (pos <= lastPosition || (mIsFixedHeight ? currentRowWidth <= mContentWidth : currentRowHeight > mMaxRowHeight)) {
-            double posAspectRatio = mSizeCalculatorDelegate.aspectRatioForIndex(pos);
+        // The row ends with the item that filled it, or with a full row view
+        int pos = rowEndPosition - 1;
+        double posAspectRatio = mAspectRatios[pos];
 
-            // If the size calculator delegate supplies negative aspect ratio,
-            // consider it as "span the entire row" view. It will force a line break
-            // and add the view to its own line
-            boolean isFullRowView = false;
-            if (posAspectRatio < 0) {
-                isFullRowView = true;
-            } else{
-                currentRowAspectRatio += posAspectRatio;
-                itemAspectRatios.add(posAspectRatio);
-            }
+        // If the size calculator delegate supplies negative aspect ratio,
+        // consider it as "span the entire row" view. It will force a line break
+        // and add the view to its own line
+        boolean isFullRowView = posAspectRatio < 0;
+        List<Double> itemAspectRatios = aspectRatiosForRange(firstPosition, isFullRowView ? pos : rowEndPosition);
+        double currentRowAspectRatio = aspectRatioForRange(firstPosition, rowEndPosition);
 
+        int currentRowHeight = mIsFixedHeight ? mMaxRowHeight : calculateHeight(mContentWidth, currentRowAspectRatio);
+        int currentRowWidth = calculateWidth(currentRowHeight, currentRowAspectRatio);
+
+        boolean isRowFull = isRowFull(currentRowAspectRatio);
+        int rowChildCount = itemAspectRatios.size();
+
+        // If the current view is the full row view, the current row is forced to wrap so that
+        // the full row view can take the entire row for itself. The children preceding it
+        // still get a row of their own, otherwise the item decoration will not work
+        if (rowChildCount > 0) {
+            mFirstChildPositionForRow.add(firstPosition);
+        }
+
+        // Quantized rows fill the content width exactly, the last child takes what's left
+        boolean isRowQuantized = false;
+
+        int[] itemSlacks = new int[rowChildCount];
+        if (!mIsFixedHeight && isRowFull && mRowHeightBuckets != null) {
+            currentRowHeight = quantizeRowHeight(currentRowHeight);
             currentRowWidth = calculateWidth(currentRowHeight, currentRowAspectRatio);
-            if (!mIsFixedHeight) {
-                currentRowHeight = calculateHeight(mContentWidth, currentRowAspectRatio);
-            }
-
-            boolean isRowFull = mIsFixedHeight ? currentRowWidth > mContentWidth : currentRowHeight <= mMaxRowHeight;
-            if (isRowFull || isFullRowView) {
-                int rowChildCount = itemAspectRatios.size();
-
-                // If the current view is the full row view, the current row is forced to wrap so that
-                // the full row view can take the entire row for itself, however the first
-                // children on that row needs to be added to mFirstChildPositionForRow as well, otherwise
-                // the item decoration will not work
-                if (isFullRowView) {
-                    mFirstChildPositionForRow.add(pos - rowChildCount);
-                }
-
-                mFirstChildPositionForRow.add(pos - rowChildCount + 1);
-
-                int[] itemSlacks = new int[rowChildCount];
-                if (mIsFixedHeight) {
-                    itemSlacks = distributeRowSlack(currentRowWidth, rowChildCount, itemAspectRatios);
-
-                    if (rowChildCount > 1 && !hasValidItemSlacks(itemSlacks, itemAspectRatios)) {
-                        int lastItemWidth = calculateWidth(currentRowHeight,
-                                itemAspectRatios.get(itemAspectRatios.size() - 1));
-                        currentRowWidth -= lastItemWidth;
-                        rowChildCount -= 1;
-                        --pos;
-                        itemAspectRatios.remove(itemAspectRatios.size() - 1);
-
-                        itemSlacks = distributeRowSlack(currentRowWidth, rowChildCount, itemAspectRatios);
-                    }
-                }
-
-                int availableSpace = mContentWidth;
-                for (int i = 0; i < rowChildCount; i++) {
-                    // If the previous row was force-wrapped and there was a single photo, the row
-                    // size would be computed from that single photo - this could make the row huge
-                    // because the aspect ratio of that single photo would be used. So this limits
-                    // it to something reasonable
-                    if (isFullRowView && !isRowFull) {
-                        currentRowHeight = (int) Math.ceil(mMaxRowHeight * 0.75);
-                    }
-                    int itemWidth = calculateWidth(currentRowHeight, itemAspectRatios.get(i)) - itemSlacks[i];
-                    itemWidth = Math.min(availableSpace, itemWidth);
-
-                    mSizeForChildAtPosition.add(new Size(itemWidth, currentRowHeight));
-                    mRowForChildPosition.add(row);
-
-                    availableSpace -= itemWidth;
-                }
-
-                // Now add a size for the full row view
-                if (isFullRowView) {
-                    mSizeForChildAtPosition.add(new Size(mContentWidth, calculateHeight(mContentWidth, Math.abs(posAspectRatio))));
-                    mRowForChildPosition.add(row++);
-                }
-
-                itemAspectRatios.clear();
-                currentRowAspectRatio = 0.0;
+            itemSlacks = distributeRowSlack(currentRowHeight, currentRowWidth, rowChildCount, itemAspectRatios);
+            isRowQuantized = true;
+        } else if (mIsFixedHeight) {
+            itemSlacks = distributeRowSlack(currentRowWidth, rowChildCount, itemAspectRatios);
+
+            if (!isFullRowView && rowChildCount > 1 && !hasValidItemSlacks(itemSlacks, itemAspectRatios)) {
+                int lastItemWidth = calculateWidth(currentRowHeight,
+                        itemAspectRatios.get(itemAspectRatios.size() - 1));
+                currentRowWidth -= lastItemWidth;
+                rowChildCount -= 1;
+                itemAspectRatios.remove(itemAspectRatios.size() - 1);
+
+                itemSlacks = distributeRowSlack(currentRowWidth, rowChildCount, itemAspectRatios);
+            }
+        }
+
+        int availableSpace = mContentWidth;
+        for (int i = 0; i < rowChildCount; i++) {
+            // If the previous row was force-wrapped and there was a single photo, the row
+            // size would be computed from that single photo - this could make the row huge
+            // because the aspect ratio of that single photo would be used. So this limits
+            // it to something reasonable
+            if (isFullRowView && !isRowFull) {
+                currentRowHeight = (int) Math.ceil(mMaxRowHeight * 0.75);
+            }
+            int itemWidth = calculateWidth(currentRowHeight, itemAspectRatios.get(i)) - itemSlacks[i];
+            itemWidth = Math.min(availableSpace, itemWidth);
+            if (isRowQuantized && i == rowChildCount - 1) {
+                itemWidth = availableSpace;
+            }
+
+            mSizeForChildAtPosition.add(new Size(itemWidth, currentRowHeight));
+            mRowForChildPosition.add(row);
+
+            availableSpace -= itemWidth;
+        }
+
+        // Now add a size for the full row view, on a row of its own
+        if (isFullRowView) {
+            if (rowChildCount > 0) {
                 row++;
             }
 
-            pos++;
+            mFirstChildPositionForRow.add(pos);
+            mSizeForChildAtPosition.add(new Size(mContentWidth, calculateHeight(mContentWidth, Math.abs(posAspectRatio))));
+            mRowForChildPosition.add(row);
+        }
+    }
+
+    private void computeProvisionalRow(int row, List<Double> itemAspectRatios, double rowAspectRatio) {
+        int rowChildCount = itemAspectRatios.size();
+        boolean isJustified = mTailRowPolicy == TailRowPolicy.JUSTIFIED;
+
+        int rowHeight = mMaxRowHeight;
+        boolean isRowQuantized = false;
+        if (isJustified && !mIsFixedHeight) {
+            rowHeight = calculateHeight(mContentWidth, rowAspectRatio);
+            if (mRowHeightBuckets != null && rowChildCount > 0) {
+                rowHeight = quantizeRowHeight(rowHeight);
+                isRowQuantized = true;
+            }
+        }
+
+        // In fixed height mode the row is narrower than the content width, so the (negative) slack
+        // stretches the children to fill it. Quantized rows absorb their slack the same way.
+        int[] itemSlacks = new int[rowChildCount];
+        if (isJustified && (mIsFixedHeight || isRowQuantized)) {
+            itemSlacks = distributeRowSlack(rowHeight, calculateWidth(rowHeight, rowAspectRatio),
+                    rowChildCount, itemAspectRatios);
+        }
+
+        mFirstChildPositionForRow.add(mSizeForChildAtPosition.size());
+
+        int availableSpace = mContentWidth;
+        for (int i = 0; i < rowChildCount; i++) {
+            int itemWidth = calculateWidth(rowHeight, itemAspectRatios.get(i)) - itemSlacks[i];
+            itemWidth = Math.min(availableSpace, itemWidth);
+            if (isRowQuantized && i == rowChildCount - 1) {
+                itemWidth = availableSpace;
+            }
+
+            mSizeForChildAtPosition.add(new Size(itemWidth, rowHeight));
+            mRowForChildPosition.add(row);
+
+            availableSpace -= itemWidth;
         }
+
+        mIsTailRowProvisional = true;
     }
 
     private int[] distributeRowSlack(int rowWidth, int rowChildCount, List<Double> itemAspectRatios) {
-        return distributeRowSlack(rowWidth - mContentWidth, rowWidth, rowChildCount, itemAspectRatios);
+        return distributeRowSlack(mMaxRowHeight, rowWidth, rowChildCount, itemAspectRatios);
     }
 
-    private int[] distributeRowSlack(int rowSlack, int rowWidth, int rowChildCount, List<Double> itemAspectRatios) {
+    private int[] distributeRowSlack(int rowHeight, int rowWidth, int rowChildCount, List<Double> itemAspectRatios) {
+        return distributeRowSlack(rowWidth - mContentWidth, rowHeight, rowWidth, rowChildCount, itemAspectRatios);
+    }
+
+    private int[] distributeRowSlack(int rowSlack, int rowHeight, int rowWidth, int rowChildCount, List<Double> itemAspectRatios) {
         int itemSlacks[] = new int[rowChildCount];
 
         for (int i = 0; i < rowChildCount; i++) {
-            double itemWidth = mMaxRowHeight * itemAspectRatios.get(i);
+            double itemWidth = rowHeight * itemAspectRatios.get(i);
             itemSlacks[i] = (int) (rowSlack * (itemWidth / rowWidth));
         }
 
         return itemSlacks;
     }
 
+    // Returns the row height bucket closest to the given height, the taller one on a tie
+    private int quantizeRowHeight(int rowHeight) {
+        int index = Arrays.binarySearch(mRowHeightBuckets, rowHeight);
+        if (index >= 0) return mRowHeightBuckets[index];
+
+        int insertionPoint = -index - 1;
+        if (insertionPoint == 0) return mRowHeightBuckets[0];
+        if (insertionPoint == mRowHeightBuckets.length) return mRowHeightBuckets[mRowHeightBuckets.length - 1];
+
+        int lower = mRowHeightBuckets[insertionPoint - 1];
+        int higher = mRowHeightBuckets[insertionPoint];
+        return rowHeight - lower < higher - rowHeight ? lower : higher;
+    }
+
     private boolean hasValidItemSlacks(int[] itemSlacks, List<Double> itemAspectRatios) {
         for (int i = 0; i < itemSlacks.length; i++) {
             int itemWidth = (int) (itemAspectRatios.get(i) * mMaxRowHeight);
@@ -238,4 +1065,55 @@ public class GreedoLayoutSizeCalculator {
     private int calculateHeight(int itemWidth, double aspectRatio) {
         return (int) Math.ceil(itemWidth / aspectRatio);
     }
+
+    // Rows kept aside after adapter changes, in position order. Positions are up to date with the
+    // adapter, and rows before mNextRow have been reused or skipped already.
+    private static class StashedRows {
+        private final List<Size> mSizes = new ArrayList<>();
+        private final List<Integer> mFirstChildPositionForRow = new ArrayList<>();
+        private final List<Integer> mFirstSizeIndexForRow = new ArrayList<>();
+        private final List<Boolean> mIsRowProvisional = new ArrayList<>();
+        private int mNextRow;
+
+        int getRowCount() {
+            return mFirstChildPositionForRow.size();
+        }
+
+        List<Size> getSizesForRow(int row) {
+            int endIndex = row + 1 < mFirstSizeIndexForRow.size()
+                    ? mFirstSizeIndexForRow.get(row + 1) : mSizes.size();
+            return mSizes.subList(mFirstSizeIndexForRow.get(row), endIndex);
+        }
+
+        boolean isRowProvisional(int row) {
+            return mIsRowProvisional.get(row);
+        }
+
+        // Stashes the given row unless the change overlaps it, shifting it if it lies past the
+        // change. A row depends on its children and, in fixed height mode or before a full row
+        // view, on the child right after it. Rows are kept in order without overlapping, a row that
+        // starts before the end of the last one stashed is dropped.
+        void stashShifted(int firstPosition, List<Size> rowSizes, boolean isProvisional,
+                          int position, int removedCount, int insertedCount) {
+            int lastPosition = firstPosition + rowSizes.size() - 1;
+            if (firstPosition < position + removedCount && lastPosition + 1 >= position) {
+                return;
+            }
+
+            if (firstPosition >= position + removedCount) {
+                firstPosition += insertedCount - removedCount;
+            }
+
+            int rowCount = getRowCount();
+            if (rowCount > 0 && firstPosition < mFirstChildPositionForRow.get(rowCount - 1)
+                    + getSizesForRow(rowCount - 1).size()) {
+                return;
+            }
+
+            mFirstChildPositionForRow.add(firstPosition);
+            mFirstSizeIndexForRow.add(mSizes.size());
+            mSizes.addAll(rowSizes);
+            mIsRowProvisional.add(isProvisional);
+        }
+    }
 }
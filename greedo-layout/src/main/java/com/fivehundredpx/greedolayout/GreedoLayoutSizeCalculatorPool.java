@@ -0,0 +1,149 @@
+package com.fivehundredpx.greedolayout;
+
+import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.SizeCalculatorDelegate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used size calculators around, keyed by a data set id and the width and
+ * configuration that affect their row sizes. Layout managers showing the same data set at the same
+ * width, or a layout manager that is rebound to a data set it has shown before, can then share the
+ * rows that were already computed instead of computing them from scratch. Once the pool is full,
+ * the least recently used calculator is evicted.
+ *
+ * Pooled calculators are never reconfigured by the layout managers they're attached to, a layout
+ * manager whose width or configuration changes switches to a private copy instead.
+ */
+public class GreedoLayoutSizeCalculatorPool {
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    private final int mMaxSize;
+    private final Map<Key, GreedoLayoutSizeCalculator> mSizeCalculators;
+
+    public GreedoLayoutSizeCalculatorPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public GreedoLayoutSizeCalculatorPool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be greater than 0");
+        }
+
+        mMaxSize = maxSize;
+        // Access ordered, so the eldest entry is always the least recently used one
+        mSizeCalculators = new LinkedHashMap<Key, GreedoLayoutSizeCalculator>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, GreedoLayoutSizeCalculator> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the size calculator for the given data set, width and configuration, creating it if
+     * it isn't pooled yet. A pooled calculator keeps the rows it has computed so far, and its
+     * delegate is replaced by the given one. Attach the result with
+     * {@link GreedoLayoutManager#setSizeCalculator(GreedoLayoutSizeCalculator)}.
+     *
+     * @param datasetId Identifies the data set, it must change whenever the data set's content does.
+     * @param contentWidth Width rows are laid out in, the width of the RecyclerView minus its padding.
+     * @param maxRowHeight Max height a row can grow to, see {@link GreedoLayoutManager#setMaxRowHeight(int)}.
+     * @param fixedHeight true if all rows should have the same height.
+     * @param sizeCalculatorDelegate Delegate supplying the aspect ratios of the data set.
+     */
+    public GreedoLayoutSizeCalculator obtain(Object datasetId, int contentWidth, int maxRowHeight,
+                                             boolean fixedHeight, SizeCalculatorDelegate sizeCalculatorDelegate) {
+        return obtain(datasetId, contentWidth, new GreedoLayoutConfiguration(maxRowHeight, fixedHeight),
+                sizeCalculatorDelegate);
+    }
+
+    /**
+     * Same as {@link #obtain(Object, int, int, boolean, SizeCalculatorDelegate)}, with every
+     * setting rows are broken with taken from the given configuration.
+     */
+    public GreedoLayoutSizeCalculator obtain(Object datasetId, int contentWidth,
+                                             GreedoLayoutConfiguration configuration,
+                                             SizeCalculatorDelegate sizeCalculatorDelegate) {
+        Key key = new Key(datasetId, contentWidth, configuration);
+        GreedoLayoutSizeCalculator sizeCalculator = mSizeCalculators.get(key);
+        if (sizeCalculator == null) {
+            sizeCalculator = new GreedoLayoutSizeCalculator(sizeCalculatorDelegate);
+            sizeCalculator.setContentWidth(contentWidth);
+            sizeCalculator.setConfiguration(configuration);
+            mSizeCalculators.put(key, sizeCalculator);
+        } else {
+            sizeCalculator.setSizeCalculatorDelegate(sizeCalculatorDelegate);
+        }
+
+        return sizeCalculator;
+    }
+
+    /**
+     * Removes every calculator of the given data set, regardless of its configuration.
+     */
+    public void evict(Object datasetId) {
+        Iterator<Key> iterator = mSizeCalculators.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mDatasetId.equals(datasetId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        mSizeCalculators.clear();
+    }
+
+    public int size() {
+        return mSizeCalculators.size();
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    private static class Key {
+        final Object mDatasetId;
+        final int mContentWidth;
+        final GreedoLayoutConfiguration mConfiguration;
+
+        Key(Object datasetId, int contentWidth, GreedoLayoutConfiguration configuration) {
+            if (datasetId == null) {
+                throw new IllegalArgumentException("Data set id must not be null");
+            }
+
+            if (contentWidth <= 0) {
+                throw new IllegalArgumentException("Content width must be greater than 0");
+            }
+
+            if (configuration == null) {
+                throw new IllegalArgumentException("Configuration must not be null");
+            }
+
+            mDatasetId = datasetId;
+            mContentWidth = contentWidth;
+            mConfiguration = configuration;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return mContentWidth == key.mContentWidth
+                    && mConfiguration.equals(key.mConfiguration)
+                    && mDatasetId.equals(key.mDatasetId);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mDatasetId.hashCode();
+            result = 31 * result + mContentWidth;
+            result = 31 * result + mConfiguration.hashCode();
+            return result;
+        }
+    }
+}
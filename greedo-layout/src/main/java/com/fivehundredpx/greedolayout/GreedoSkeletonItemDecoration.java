@@ -0,0 +1,104 @@
+package com.fivehundredpx.greedolayout;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Draws a placeholder box for every item in the visible rows that doesn't have a view attached,
+ * straight from the size calculator's row model. Combined with
+ * {@link GreedoLayoutManager#setSkeletonScrollThreshold(int)}, fast flings draw placeholders without
+ * creating or binding a single view.
+ */
+public class GreedoSkeletonItemDecoration extends RecyclerView.ItemDecoration {
+    public static final int DEFAULT_COLOR = 0xFFE0E0E0;
+
+    private final Paint mPaint;
+    private int mSpacing;
+
+    public GreedoSkeletonItemDecoration() {
+        this(DEFAULT_COLOR, 0);
+    }
+
+    /**
+     * @param color Color the placeholders are filled with.
+     * @param spacing Spacing between items, pass the same value as the
+     *                {@link GreedoSpacingItemDecoration} if there is one so the placeholders line
+     *                up with the views.
+     */
+    public GreedoSkeletonItemDecoration(int color, int spacing) {
+        mPaint = new Paint();
+        mPaint.setColor(color);
+        mPaint.setStyle(Paint.Style.FILL);
+        mSpacing = spacing;
+    }
+
+    public void setColor(int color) {
+        mPaint.setColor(color);
+    }
+
+    public void setSpacing(int spacing) {
+        mSpacing = spacing;
+    }
+
+    @Override
+    public void onDraw(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+        if (!(parent.getLayoutManager() instanceof GreedoLayoutManager)) {
+            throw new IllegalArgumentException(String.format("The %s must be used with a %s",
+                    GreedoSkeletonItemDecoration.class.getSimpleName(),
+                    GreedoLayoutManager.class.getSimpleName()));
+        }
+
+        final GreedoLayoutManager layoutManager = (GreedoLayoutManager) parent.getLayoutManager();
+        if (state.getItemCount() == 0 || layoutManager.getSizeCalculator().getContentWidth() <= 0) {
+            return;
+        }
+
+        int left = parent.getPaddingLeft();
+        int bottom = parent.getHeight();
+
+        int row = layoutManager.getFirstVisibleRow();
+        int rowTop = layoutManager.getFirstVisibleRowTop();
+        while (rowTop < bottom && layoutManager.hasRow(row)) {
+            int rowHeight = layoutManager.layoutHeightForRow(row);
+
+            // The header isn't part of the row model, we only know its size once it's been laid out
+            boolean isHeaderRow = layoutManager.isFirstViewHeader() && row == GreedoLayoutManager.HEADER_POSITION;
+            if (!isHeaderRow) {
+                drawRow(canvas, layoutManager, row, left, rowTop, rowHeight);
+            }
+
+            rowTop += rowHeight;
+            row++;
+        }
+    }
+
+    private void drawRow(Canvas canvas, GreedoLayoutManager layoutManager, int row,
+                         int left, int rowTop, int rowHeight) {
+        int firstPosition = layoutManager.firstChildPositionForRow(row);
+        int lastPosition = layoutManager.lastChildPositionForRow(row);
+
+        // Offset from the start of the row in computed sizes, scaled the same way the layout
+        // manager scales them while resizing
+        int rowOffset = 0;
+        for (int position = firstPosition; position <= lastPosition; position++) {
+            int width = layoutManager.sizeForChildAtPosition(position).getWidth();
+
+            View view = layoutManager.findViewByPosition(position);
+            if (view == null) {
+                int itemLeft = left + layoutManager.scaleToLayout(position, rowOffset);
+                int itemRight = left + layoutManager.scaleToLayout(position, rowOffset + width);
+
+                // Leave the same gaps the spacing decoration does
+                int top = GreedoSpacingItemDecoration.isTopChild(position, layoutManager) ? mSpacing : 0;
+                int start = position == firstPosition ? mSpacing : 0;
+                canvas.drawRect(itemLeft + start, rowTop + top,
+                        itemRight - mSpacing, rowTop + rowHeight - mSpacing, mPaint);
+            }
+
+            rowOffset += width;
+        }
+    }
+}
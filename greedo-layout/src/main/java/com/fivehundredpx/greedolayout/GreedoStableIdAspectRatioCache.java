@@ -0,0 +1,175 @@
+package com.fivehundredpx.greedolayout;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.SizeCalculatorDelegate;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size calculator delegate that caches the aspect ratios supplied by another delegate, keyed by the
+ * adapter's stable ids. The cache follows the adapter's changes, so when items are moved, inserted
+ * or removed the aspect ratios already known are reused instead of querying the wrapped delegate
+ * again. This matters when the wrapped delegate is expensive, e.g. when it reads from a database.
+ *
+ * The adapter must have stable ids. Pass this cache to the {@link GreedoLayoutManager} in place of
+ * the wrapped delegate, and {@link #release()} it once the adapter isn't used anymore.
+ */
+public class GreedoStableIdAspectRatioCache extends RecyclerView.AdapterDataObserver
+        implements SizeCalculatorDelegate {
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final RecyclerView.Adapter<?> mAdapter;
+    private final SizeCalculatorDelegate mSizeCalculatorDelegate;
+    private final int mMaxSize;
+
+    // Aspect ratios by stable id, access ordered so the eldest entry is the least recently used one
+    private final Map<Long, Double> mAspectRatios;
+
+    // Stable ids by position, filled in lazily. Unknown ids are RecyclerView.NO_ID.
+    private long[] mItemIds = new long[0];
+    private int mItemIdCount = 0;
+
+    public GreedoStableIdAspectRatioCache(RecyclerView.Adapter<?> adapter,
+                                          SizeCalculatorDelegate sizeCalculatorDelegate) {
+        this(adapter, sizeCalculatorDelegate, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param adapter Adapter supplying the stable ids, it must have stable ids.
+     * @param sizeCalculatorDelegate Delegate queried for the aspect ratios that aren't cached.
+     * @param maxSize Max number of aspect ratios to keep.
+     */
+    public GreedoStableIdAspectRatioCache(RecyclerView.Adapter<?> adapter,
+                                          SizeCalculatorDelegate sizeCalculatorDelegate, int maxSize) {
+        if (!adapter.hasStableIds()) {
+            throw new IllegalArgumentException("The adapter must have stable ids");
+        }
+
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be greater than 0");
+        }
+
+        mAdapter = adapter;
+        mSizeCalculatorDelegate = sizeCalculatorDelegate;
+        mMaxSize = maxSize;
+        mAspectRatios = new LinkedHashMap<Long, Double>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+
+        mAdapter.registerAdapterDataObserver(this);
+    }
+
+    /**
+     * Stop following the adapter's changes.
+     */
+    public void release() {
+        mAdapter.unregisterAdapterDataObserver(this);
+    }
+
+    @Override
+    public double aspectRatioForIndex(int index) {
+        long itemId = itemIdForPosition(index);
+        Double aspectRatio = mAspectRatios.get(itemId);
+        if (aspectRatio == null) {
+            aspectRatio = mSizeCalculatorDelegate.aspectRatioForIndex(index);
+            mAspectRatios.put(itemId, aspectRatio);
+        }
+        return aspectRatio;
+    }
+
+    public int size() {
+        return mAspectRatios.size();
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    private long itemIdForPosition(int position) {
+        if (position >= mItemIdCount) {
+            ensureItemIdCapacity(position + 1);
+            Arrays.fill(mItemIds, mItemIdCount, position + 1, RecyclerView.NO_ID);
+            mItemIdCount = position + 1;
+        }
+
+        long itemId = mItemIds[position];
+        if (itemId == RecyclerView.NO_ID) {
+            itemId = mAdapter.getItemId(position);
+            mItemIds[position] = itemId;
+        }
+        return itemId;
+    }
+
+    private void ensureItemIdCapacity(int capacity) {
+        if (capacity > mItemIds.length) {
+            mItemIds = Arrays.copyOf(mItemIds, Math.max(capacity, 2 * mItemIds.length));
+        }
+    }
+
+    //region AdapterDataObserver
+    @Override
+    public void onChanged() {
+        // Positions are all unknown now, but the aspect ratios of the ids we've seen still hold
+        mItemIdCount = 0;
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        // The content of these items changed, and their aspect ratios may have as well
+        int end = Math.min(positionStart + itemCount, mItemIdCount);
+        for (int i = positionStart; i < end; i++) {
+            if (mItemIds[i] != RecyclerView.NO_ID) {
+                mAspectRatios.remove(mItemIds[i]);
+                mItemIds[i] = RecyclerView.NO_ID;
+            }
+        }
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        if (positionStart >= mItemIdCount) return;
+
+        ensureItemIdCapacity(mItemIdCount + itemCount);
+        System.arraycopy(mItemIds, positionStart, mItemIds, positionStart + itemCount,
+                mItemIdCount - positionStart);
+        Arrays.fill(mItemIds, positionStart, positionStart + itemCount, RecyclerView.NO_ID);
+        mItemIdCount += itemCount;
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        if (positionStart >= mItemIdCount) return;
+
+        // Removed ids keep their aspect ratios until evicted, the items may well come back
+        int end = Math.min(positionStart + itemCount, mItemIdCount);
+        System.arraycopy(mItemIds, end, mItemIds, positionStart, mItemIdCount - end);
+        mItemIdCount -= end - positionStart;
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        if (fromPosition + itemCount > mItemIdCount || toPosition + itemCount > mItemIdCount) {
+            // Some of the moved ids aren't known, look them all up again
+            onItemRangeRemoved(Math.min(fromPosition, toPosition), mItemIdCount);
+            return;
+        }
+
+        // Permute the ids in place, the aspect ratios stay keyed by id
+        long[] movedItemIds = Arrays.copyOfRange(mItemIds, fromPosition, fromPosition + itemCount);
+        if (fromPosition < toPosition) {
+            System.arraycopy(mItemIds, fromPosition + itemCount, mItemIds, fromPosition,
+                    toPosition - fromPosition);
+        } else {
+            System.arraycopy(mItemIds, toPosition, mItemIds, toPosition + itemCount,
+                    fromPosition - toPosition);
+        }
+        System.arraycopy(movedItemIds, 0, mItemIds, toPosition, itemCount);
+    }
+    //endregion
+}
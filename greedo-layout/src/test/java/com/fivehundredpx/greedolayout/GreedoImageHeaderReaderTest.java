@@ -0,0 +1,263 @@
+package com.fivehundredpx.greedolayout;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Sizes read from hand built headers, through both a buffer and a stream since they're read
+ * differently.
+ */
+public class GreedoImageHeaderReaderTest {
+
+    @Test
+    public void readsPngSize() throws IOException {
+        Bytes png = new Bytes();
+        png.bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A);
+        png.int32(13).ascii("IHDR").int32(1920).int32(1080);
+        png.bytes(8, 6, 0, 0, 0);
+        assertSize(1920, 1080, png.toByteArray());
+    }
+
+    @Test
+    public void readsGifSize() throws IOException {
+        Bytes gif = new Bytes();
+        gif.ascii("GIF89a").int16LittleEndian(640).int16LittleEndian(480);
+        gif.bytes(0xF7, 0, 0);
+        assertSize(640, 480, gif.toByteArray());
+
+        gif = new Bytes();
+        gif.ascii("GIF87a").int16LittleEndian(40000).int16LittleEndian(3);
+        gif.bytes(0, 0, 0);
+        assertSize(40000, 3, gif.toByteArray());
+    }
+
+    @Test
+    public void readsLossyWebpSize() throws IOException {
+        Bytes webp = webpHeader("VP8 ");
+        webp.int32LittleEndian(0); // Chunk size
+        webp.bytes(0, 0, 0); // Frame tag
+        webp.bytes(0x9D, 0x01, 0x2A);
+        // The top two bits of each dimension are its scale, they're not part of the size
+        webp.int16LittleEndian(0x4000 | 1024).int16LittleEndian(768);
+        assertSize(1024, 768, webp.toByteArray());
+    }
+
+    @Test
+    public void readsLosslessWebpSize() throws IOException {
+        Bytes webp = webpHeader("VP8L");
+        webp.int32LittleEndian(0); // Chunk size
+        webp.bytes(0x2F);
+        // Width and height minus one, 14 bits each
+        webp.int32LittleEndian((300 - 1) | (200 - 1) << 14);
+        webp.bytes(0, 0, 0, 0, 0);
+        assertSize(300, 200, webp.toByteArray());
+    }
+
+    @Test
+    public void readsExtendedWebpSize() throws IOException {
+        Bytes webp = webpHeader("VP8X");
+        webp.int32LittleEndian(10); // Chunk size
+        webp.int32LittleEndian(0); // Flags
+        // Width and height minus one, 24 bits each
+        webp.int24LittleEndian(5000 - 1).int24LittleEndian(70000 - 1);
+        assertSize(5000, 70000, webp.toByteArray());
+    }
+
+    @Test
+    public void readsJpegSize() throws IOException {
+        Bytes jpeg = new Bytes();
+        jpeg.bytes(0xFF, 0xD8);
+        jfifSegment(jpeg);
+        jpeg.bytes(0xFF, 0xFF, 0xFF); // Fill bytes before the marker
+        jpeg.bytes(0xC0);
+        frameSegment(jpeg, 800, 600);
+        assertSize(800, 600, jpeg.toByteArray());
+    }
+
+    @Test
+    public void readsJpegSizeAfterLargeSegment() throws IOException {
+        // Larger than the buffer of a stream, so the segment is skipped past the buffered bytes
+        Bytes jpeg = new Bytes();
+        jpeg.bytes(0xFF, 0xD8);
+        jpeg.bytes(0xFF, 0xE2).int16(2 + 60000).bytes(new byte[60000]);
+        jpeg.bytes(0xFF, 0xC2);
+        frameSegment(jpeg, 123, 456);
+        assertSize(123, 456, jpeg.toByteArray());
+    }
+
+    @Test
+    public void swapsJpegSizeForRotatedOrientation() throws IOException {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            boolean isTransposed = orientation >= 5;
+            int width = isTransposed ? 600 : 800;
+            int height = isTransposed ? 800 : 600;
+
+            assertSize(width, height, exifJpeg(orientation, true));
+            assertSize(width, height, exifJpeg(orientation, false));
+        }
+    }
+
+    @Test
+    public void ignoresUnsupportedOrGarbageData() throws IOException {
+        assertSizeNull(new byte[0]);
+        assertSizeNull(new byte[] {'B', 'M'});
+        assertSizeNull("This is not an image, just some text that's long enough".getBytes("US-ASCII"));
+
+        // WebP with an unknown chunk
+        Bytes webp = webpHeader("ALPH");
+        webp.bytes(new byte[20]);
+        assertSizeNull(webp.toByteArray());
+
+        // JPEG that reaches its data without a frame
+        Bytes jpeg = new Bytes();
+        jpeg.bytes(0xFF, 0xD8);
+        jfifSegment(jpeg);
+        jpeg.bytes(0xFF, 0xDA).int16(2);
+        assertSizeNull(jpeg.toByteArray());
+    }
+
+    @Test
+    public void truncatedJpegThrows() throws IOException {
+        Bytes jpeg = new Bytes();
+        jpeg.bytes(0xFF, 0xD8);
+        jfifSegment(jpeg);
+        jpeg.bytes(0xFF, 0xC0);
+        frameSegment(jpeg, 800, 600);
+        byte[] bytes = jpeg.toByteArray();
+
+        // Cut in the middle of the frame, and of the segment before it
+        for (int length : new int[] {bytes.length - 14, 10}) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            try {
+                GreedoImageHeaderReader.readSize(ByteBuffer.wrap(truncated));
+                fail("Expected an EOFException reading a buffer cut at " + length);
+            } catch (EOFException e) {
+                // Expected
+            }
+            try {
+                GreedoImageHeaderReader.readSize(new ByteArrayInputStream(truncated));
+                fail("Expected an EOFException reading a stream cut at " + length);
+            } catch (EOFException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static byte[] exifJpeg(int orientation, boolean isLittleEndian) throws IOException {
+        Bytes tiff = new Bytes();
+        if (isLittleEndian) {
+            tiff.ascii("II").int16LittleEndian(42).int32LittleEndian(8);
+            tiff.int16LittleEndian(2); // Entry count
+            tiff.int16LittleEndian(0x010F).int16LittleEndian(2).int32LittleEndian(4).int32LittleEndian(0); // Make
+            tiff.int16LittleEndian(0x0112).int16LittleEndian(3).int32LittleEndian(1);
+            tiff.int16LittleEndian(orientation).int16LittleEndian(0);
+            tiff.int32LittleEndian(0); // Next IFD
+        } else {
+            tiff.ascii("MM").int16(42).int32(8);
+            tiff.int16(2); // Entry count
+            tiff.int16(0x010F).int16(2).int32(4).int32(0); // Make
+            tiff.int16(0x0112).int16(3).int32(1);
+            tiff.int16(orientation).int16(0);
+            tiff.int32(0); // Next IFD
+        }
+        byte[] tiffBytes = tiff.toByteArray();
+
+        Bytes jpeg = new Bytes();
+        jpeg.bytes(0xFF, 0xD8);
+        jpeg.bytes(0xFF, 0xE1).int16(2 + 6 + tiffBytes.length);
+        jpeg.ascii("Exif").bytes(0, 0).bytes(tiffBytes);
+        jpeg.bytes(0xFF, 0xC0);
+        frameSegment(jpeg, 800, 600);
+        return jpeg.toByteArray();
+    }
+
+    private static void jfifSegment(Bytes jpeg) throws IOException {
+        jpeg.bytes(0xFF, 0xE0).int16(16).ascii("JFIF").bytes(0, 1, 1, 0).int16(72).int16(72).bytes(0, 0);
+    }
+
+    private static void frameSegment(Bytes jpeg, int width, int height) throws IOException {
+        jpeg.int16(17).bytes(8).int16(height).int16(width).bytes(3);
+        jpeg.bytes(1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1);
+    }
+
+    private static Bytes webpHeader(String chunk) throws IOException {
+        Bytes webp = new Bytes();
+        webp.ascii("RIFF").int32LittleEndian(1000).ascii("WEBP").ascii(chunk);
+        return webp;
+    }
+
+    private static void assertSize(int width, int height, byte[] bytes) throws IOException {
+        Size bufferSize = GreedoImageHeaderReader.readSize(ByteBuffer.wrap(bytes));
+        assertEquals(width, bufferSize.getWidth());
+        assertEquals(height, bufferSize.getHeight());
+
+        Size streamSize = GreedoImageHeaderReader.readSize(new ByteArrayInputStream(bytes));
+        assertEquals(width, streamSize.getWidth());
+        assertEquals(height, streamSize.getHeight());
+    }
+
+    private static void assertSizeNull(byte[] bytes) throws IOException {
+        assertNull(GreedoImageHeaderReader.readSize(ByteBuffer.wrap(bytes)));
+        assertNull(GreedoImageHeaderReader.readSize(new ByteArrayInputStream(bytes)));
+    }
+
+    // Builds headers a field at a time, big endian unless noted otherwise
+    private static class Bytes {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mOutput = new DataOutputStream(mBytes);
+
+        Bytes bytes(int... values) throws IOException {
+            for (int value : values) {
+                mOutput.writeByte(value);
+            }
+            return this;
+        }
+
+        Bytes bytes(byte[] values) throws IOException {
+            mOutput.write(values);
+            return this;
+        }
+
+        Bytes ascii(String value) throws IOException {
+            mOutput.writeBytes(value);
+            return this;
+        }
+
+        Bytes int16(int value) throws IOException {
+            mOutput.writeShort(value);
+            return this;
+        }
+
+        Bytes int32(int value) throws IOException {
+            mOutput.writeInt(value);
+            return this;
+        }
+
+        Bytes int16LittleEndian(int value) throws IOException {
+            return bytes(value, value >> 8);
+        }
+
+        Bytes int24LittleEndian(int value) throws IOException {
+            return bytes(value, value >> 8, value >> 16);
+        }
+
+        Bytes int32LittleEndian(int value) throws IOException {
+            return bytes(value, value >> 8, value >> 16, value >> 24);
+        }
+
+        byte[] toByteArray() {
+            return mBytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.fivehundredpx.greedolayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Rows written to the disk cache must read back the same after reopening it, and a file that was
+ * cut short or corrupted must only ever lose rows, never return wrong ones.
+ */
+public class GreedoLayoutDiskCacheTest {
+    private static final long DATASET_VERSION = 7;
+
+    // Header size of the current format, rows start right after it
+    private static final int HEADER_SIZE = 44;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("greedo", ".cache");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void rowsRoundTripAcrossReopen() throws IOException {
+        GreedoLayoutDiskCache layoutCache = openBound();
+        for (int row = 0; row < 100; row++) {
+            layoutCache.appendRow(rowSizes(row));
+        }
+        layoutCache.close();
+
+        layoutCache = openBound();
+        assertEquals(100, layoutCache.getRowCount());
+        for (int row = 99; row >= 0; row--) {
+            assertRow(row, layoutCache.readRow(row));
+        }
+        assertNull(layoutCache.readRow(100));
+        layoutCache.close();
+    }
+
+    @Test
+    public void rowsRoundTripWithoutIndex() throws IOException {
+        // Rows reach the file through the mapping even if the index is never written
+        GreedoLayoutDiskCache layoutCache = openBound();
+        for (int row = 0; row < 20; row++) {
+            layoutCache.appendRow(rowSizes(row));
+        }
+
+        GreedoLayoutDiskCache reopened = openBound();
+        assertEquals(20, reopened.getRowCount());
+        assertRow(13, reopened.readRow(13));
+        reopened.truncateFromPosition(firstPosition(6) - 1);
+        assertEquals(5, reopened.getRowCount());
+        reopened.close();
+        layoutCache.close();
+    }
+
+    @Test
+    public void otherVersionOrConfigurationStartsEmpty() throws IOException {
+        GreedoLayoutDiskCache layoutCache = openBound();
+        layoutCache.appendRow(rowSizes(0));
+        layoutCache.close();
+
+        layoutCache = GreedoLayoutDiskCache.open(mFile, DATASET_VERSION + 1);
+        assertEquals(0, layoutCache.getRowCount());
+        layoutCache.close();
+
+        layoutCache = openBound();
+        layoutCache.appendRow(rowSizes(0));
+        layoutCache.bind(800, 300, 0);
+        assertEquals(0, layoutCache.getRowCount());
+        layoutCache.close();
+    }
+
+    @Test
+    public void truncateFromPositionDropsRowHoldingIt() throws IOException {
+        GreedoLayoutDiskCache layoutCache = openBound();
+        for (int row = 0; row < 50; row++) {
+            layoutCache.appendRow(rowSizes(row));
+        }
+
+        layoutCache.truncateFromPosition(firstPosition(50) + 10);
+        assertEquals(50, layoutCache.getRowCount());
+
+        for (int row = 49; row > 0; row -= 7) {
+            // Last child of the row, then first child of the row
+            layoutCache.truncateFromPosition(firstPosition(row + 1) - 1);
+            assertEquals(row, layoutCache.getRowCount());
+            layoutCache.truncateFromPosition(firstPosition(row - 1));
+            assertEquals(row - 1, layoutCache.getRowCount());
+
+            layoutCache.appendRow(rowSizes(row - 1));
+            layoutCache.appendRow(rowSizes(row));
+        }
+
+        layoutCache.truncateFromPosition(0);
+        assertEquals(0, layoutCache.getRowCount());
+        layoutCache.close();
+    }
+
+    @Test
+    public void truncatedFileKeepsNoBrokenRows() throws IOException {
+        writeRows(10);
+        int dataEnd = HEADER_SIZE + rowOffset(10);
+
+        // Cut the file in the middle of the last row, the mapping then reads zeroes past the end
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(dataEnd - 6);
+        file.close();
+
+        GreedoLayoutDiskCache layoutCache = openBound();
+        for (int row = 0; row < 9; row++) {
+            assertRow(row, layoutCache.readRow(row));
+        }
+        assertNull(layoutCache.readRow(9));
+        assertEquals(9, layoutCache.getRowCount());
+        layoutCache.close();
+
+        // Cut into the header, nothing is left
+        file = new RandomAccessFile(mFile, "rw");
+        file.setLength(20);
+        file.close();
+
+        layoutCache = openBound();
+        assertEquals(0, layoutCache.getRowCount());
+        layoutCache.close();
+    }
+
+    @Test
+    public void corruptChildCountDropsRowAndAfter() throws IOException {
+        int[] childCounts = {0x20000000, -5, 0, 1000};
+        for (int i = 0; i < childCounts.length; i++) {
+            for (int row = 0; row < 3; row++) {
+                writeRows(10);
+                writeInt(HEADER_SIZE + rowOffset(row), childCounts[i]);
+
+                GreedoLayoutDiskCache layoutCache = openBound();
+                for (int validRow = 0; validRow < row; validRow++) {
+                    assertRow(validRow, layoutCache.readRow(validRow));
+                }
+                assertNull(layoutCache.readRow(row));
+                assertEquals(row, layoutCache.getRowCount());
+                layoutCache.close();
+            }
+        }
+    }
+
+    @Test
+    public void corruptIndexFallsBackToRows() throws IOException {
+        writeRows(10);
+
+        // First entry of the index, just past the rows
+        writeInt(HEADER_SIZE + rowOffset(10), 12345);
+
+        GreedoLayoutDiskCache layoutCache = openBound();
+        for (int row = 0; row < 10; row++) {
+            assertRow(row, layoutCache.readRow(row));
+        }
+        layoutCache.truncateFromPosition(firstPosition(4));
+        assertEquals(4, layoutCache.getRowCount());
+        layoutCache.close();
+    }
+
+    @Test
+    public void corruptWidthDropsRowAndAfter() throws IOException {
+        writeRows(10);
+        writeInt(HEADER_SIZE + rowOffset(6) + 8, 99999);
+
+        GreedoLayoutDiskCache layoutCache = openBound();
+        assertNotNull(layoutCache.readRow(5));
+        assertNull(layoutCache.readRow(6));
+        assertEquals(6, layoutCache.getRowCount());
+        assertNull(layoutCache.readRow(7));
+        layoutCache.close();
+    }
+
+    private GreedoLayoutDiskCache openBound() throws IOException {
+        GreedoLayoutDiskCache layoutCache = GreedoLayoutDiskCache.open(mFile, DATASET_VERSION);
+        layoutCache.bind(1000, 300, 0);
+        return layoutCache;
+    }
+
+    private void writeRows(int rowCount) throws IOException {
+        mFile.delete();
+        GreedoLayoutDiskCache layoutCache = openBound();
+        for (int row = 0; row < rowCount; row++) {
+            layoutCache.appendRow(rowSizes(row));
+        }
+        layoutCache.close();
+    }
+
+    private void writeInt(long offset, int value) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.seek(offset);
+        file.writeInt(value);
+        file.close();
+    }
+
+    // Rows have one to five children, with sizes made up from the row and child index
+    private static int childCount(int row) {
+        return 1 + row % 5;
+    }
+
+    private static List<Size> rowSizes(int row) {
+        List<Size> sizes = new ArrayList<>();
+        for (int i = 0; i < childCount(row); i++) {
+            sizes.add(new Size(100 + 10 * row + i, 200 + row));
+        }
+        return sizes;
+    }
+
+    private static int firstPosition(int row) {
+        int position = 0;
+        for (int i = 0; i < row; i++) {
+            position += childCount(i);
+        }
+        return position;
+    }
+
+    // Offset of the row from the end of the header
+    private static int rowOffset(int row) {
+        int offset = 0;
+        for (int i = 0; i < row; i++) {
+            offset += 12 + 4 * childCount(i);
+        }
+        return offset;
+    }
+
+    private static void assertRow(int row, Size[] sizes) {
+        assertNotNull("Row " + row, sizes);
+        List<Size> expected = rowSizes(row);
+        assertEquals("Row " + row, expected.size(), sizes.length);
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals("Row " + row, expected.get(i).getWidth(), sizes[i].getWidth());
+            assertEquals("Row " + row, expected.get(i).getHeight(), sizes[i].getHeight());
+        }
+    }
+}
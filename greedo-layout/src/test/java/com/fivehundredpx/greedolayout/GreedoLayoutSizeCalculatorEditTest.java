@@ -0,0 +1,148 @@
+package com.fivehundredpx.greedolayout;
+
+import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.SizeCalculatorDelegate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Rows kept across adapter changes, reused from the stash or not, must match the rows a fresh
+ * calculator computes for the data after the changes.
+ */
+public class GreedoLayoutSizeCalculatorEditTest {
+    private final List<Double> mAspectRatios = new ArrayList<>();
+    private final SizeCalculatorDelegate mDelegate = new SizeCalculatorDelegate() {
+        @Override
+        public double aspectRatioForIndex(int index) {
+            return mAspectRatios.get(index);
+        }
+    };
+
+    private int mContentWidth;
+    private int mMaxRowHeight;
+    private boolean mIsFixedHeight;
+
+    @Test
+    public void reusedTailRowStaysProvisional() {
+        mContentWidth = 1285;
+        mMaxRowHeight = 243;
+        mIsFixedHeight = true;
+        mAspectRatios.addAll(Arrays.asList(1.7498, 1.1338, 1.8437, 1.6954, 2.9619));
+
+        GreedoLayoutSizeCalculator sizeCalculator = newSizeCalculator();
+        describeRows(sizeCalculator);
+
+        mAspectRatios.set(1, 1.03385);
+        mAspectRatios.set(2, 2.96079);
+        sizeCalculator.onItemsUpdated(1, 2);
+        sizeCalculator.onItemsMoved(0, 0, 1);
+
+        assertEquals(describeRows(newSizeCalculator()), describeRows(sizeCalculator));
+    }
+
+    @Test
+    public void randomEditsMatchFreshRows() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 20000; trial++) {
+            mContentWidth = 600 + random.nextInt(800);
+            mMaxRowHeight = 150 + random.nextInt(300);
+            mIsFixedHeight = random.nextBoolean();
+
+            mAspectRatios.clear();
+            int itemCount = 2 + random.nextInt(40);
+            for (int i = 0; i < itemCount; i++) {
+                mAspectRatios.add(randomAspectRatio(random));
+            }
+
+            GreedoLayoutSizeCalculator sizeCalculator = newSizeCalculator();
+            describeRows(sizeCalculator);
+
+            int editCount = 1 + random.nextInt(4);
+            for (int edit = 0; edit < editCount; edit++) {
+                applyRandomEdit(sizeCalculator, random);
+                sizeCalculator.setItemCount(mAspectRatios.size());
+
+                // Rows are sometimes recomputed between edits, sometimes not
+                if (random.nextBoolean()) {
+                    describeRows(sizeCalculator);
+                }
+            }
+
+            assertEquals("Trial " + trial, describeRows(newSizeCalculator()), describeRows(sizeCalculator));
+        }
+    }
+
+    private void applyRandomEdit(GreedoLayoutSizeCalculator sizeCalculator, Random random) {
+        int position = random.nextInt(mAspectRatios.size());
+        switch (random.nextInt(4)) {
+            case 0: {
+                int count = 1 + random.nextInt(3);
+                position = random.nextInt(mAspectRatios.size() + 1);
+                for (int i = 0; i < count; i++) {
+                    mAspectRatios.add(position, randomAspectRatio(random));
+                }
+                sizeCalculator.onItemsAdded(position, count);
+                break;
+            }
+            case 1: {
+                if (mAspectRatios.size() <= 2) break;
+
+                int count = Math.min(1 + random.nextInt(2), mAspectRatios.size() - position);
+                for (int i = 0; i < count; i++) {
+                    mAspectRatios.remove(position);
+                }
+                sizeCalculator.onItemsRemoved(position, count);
+                break;
+            }
+            case 2: {
+                int count = Math.min(1 + random.nextInt(2), mAspectRatios.size() - position);
+                for (int i = 0; i < count; i++) {
+                    mAspectRatios.set(position + i, randomAspectRatio(random));
+                }
+                sizeCalculator.onItemsUpdated(position, count);
+                break;
+            }
+            default: {
+                int toPosition = random.nextInt(mAspectRatios.size());
+                mAspectRatios.add(toPosition, mAspectRatios.remove(position));
+                sizeCalculator.onItemsMoved(position, toPosition, 1);
+                break;
+            }
+        }
+    }
+
+    // One in twenty items is a full row view
+    private static double randomAspectRatio(Random random) {
+        return random.nextInt(20) == 0 ? -1.0 : 0.5 + random.nextDouble() * 2.5;
+    }
+
+    private GreedoLayoutSizeCalculator newSizeCalculator() {
+        GreedoLayoutSizeCalculator sizeCalculator = new GreedoLayoutSizeCalculator(mDelegate);
+        sizeCalculator.setContentWidth(mContentWidth);
+        sizeCalculator.setMaxRowHeight(mMaxRowHeight);
+        sizeCalculator.setFixedHeight(mIsFixedHeight);
+        sizeCalculator.setItemCount(mAspectRatios.size());
+        return sizeCalculator;
+    }
+
+    // Every row's child sizes and whether it's provisional, computing them all
+    static String describeRows(GreedoLayoutSizeCalculator sizeCalculator) {
+        StringBuilder description = new StringBuilder();
+        int lastRow = sizeCalculator.getRowForChildPosition(sizeCalculator.getItemCount() - 1);
+        for (int row = 0; row <= lastRow; row++) {
+            for (int position = sizeCalculator.getFirstChildPositionForRow(row);
+                 position <= sizeCalculator.getLastChildPositionForRow(row); position++) {
+                Size size = sizeCalculator.sizeForChildAtPosition(position);
+                description.append(size.getWidth()).append('x').append(size.getHeight()).append(' ');
+            }
+            description.append(sizeCalculator.isRowProvisional(row) ? "provisional" : "complete").append('\n');
+        }
+        return description.toString();
+    }
+}
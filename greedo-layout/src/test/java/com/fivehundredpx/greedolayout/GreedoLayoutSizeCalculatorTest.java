@@ -0,0 +1,171 @@
+package com.fivehundredpx.greedolayout;
+
+import com.fivehundredpx.greedolayout.GreedoLayoutSizeCalculator.SizeCalculatorDelegate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Rows broken with prefix sums must match the rows of the original calculator, which added the
+ * aspect ratios of a row up one item at a time.
+ */
+public class GreedoLayoutSizeCalculatorTest {
+    private static final double VALID_ITEM_SLACK_THRESHOLD = 2.0 / 3.0;
+
+    @Test
+    public void rowsMatchBaseline() {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 5000; trial++) {
+            int contentWidth = 300 + random.nextInt(1500);
+            int maxRowHeight = 80 + random.nextInt(500);
+            boolean isFixedHeight = random.nextBoolean();
+            int itemCount = 1 + random.nextInt(300);
+
+            // The original calculator reads past the last item to end its last row
+            final double[] aspectRatios = new double[itemCount + 100];
+            for (int i = 0; i < aspectRatios.length; i++) {
+                aspectRatios[i] = randomAspectRatio(random);
+            }
+
+            GreedoLayoutSizeCalculator sizeCalculator = new GreedoLayoutSizeCalculator(new SizeCalculatorDelegate() {
+                @Override
+                public double aspectRatioForIndex(int index) {
+                    return aspectRatios[index];
+                }
+            });
+            sizeCalculator.setContentWidth(contentWidth);
+            sizeCalculator.setMaxRowHeight(maxRowHeight);
+            sizeCalculator.setFixedHeight(isFixedHeight);
+            sizeCalculator.setItemCount(itemCount);
+
+            // Only complete rows, the last one is sized without the items past the item count
+            List<String> rows = new ArrayList<>();
+            int lastRow = sizeCalculator.getRowForChildPosition(itemCount - 1);
+            for (int row = 0; row <= lastRow && !sizeCalculator.isRowProvisional(row); row++) {
+                StringBuilder description = new StringBuilder();
+                for (int position = sizeCalculator.getFirstChildPositionForRow(row);
+                     position <= sizeCalculator.getLastChildPositionForRow(row); position++) {
+                    Size size = sizeCalculator.sizeForChildAtPosition(position);
+                    description.append(position).append(':').append(size.getWidth()).append('x')
+                            .append(size.getHeight()).append(' ');
+                }
+                rows.add(description.toString());
+            }
+
+            List<String> baselineRows = baselineRows(aspectRatios, contentWidth, maxRowHeight, isFixedHeight, rows.size());
+            assertEquals("Trial " + trial, baselineRows, rows);
+        }
+    }
+
+    // Multiples of 1/64, which add up exactly, so that a difference of prefix sums is exactly the
+    // sum of the items in between. One in twenty items is a full row view.
+    private static double randomAspectRatio(Random random) {
+        if (random.nextInt(20) == 0) {
+            return -(16 + random.nextInt(160)) / 64.0;
+        }
+        return (16 + random.nextInt(240)) / 64.0;
+    }
+
+    // The row breaking of the original calculator, up to the given number of rows. Two of its bugs
+    // are left out, the current calculator fixes both: a full row view right after a complete
+    // row no longer adds an empty row, and the shorter height of a forced wrap no longer carries
+    // over to the fixed height rows after it.
+    private static List<String> baselineRows(double[] aspectRatios, int contentWidth, int maxRowHeight,
+                                             boolean isFixedHeight, int rowCount) {
+        List<String> rows = new ArrayList<>();
+        List<Double> itemAspectRatios = new ArrayList<>();
+        double currentRowAspectRatio = 0.0;
+        int currentRowHeight = isFixedHeight ? maxRowHeight : Integer.MAX_VALUE;
+
+        for (int pos = 0; rows.size() < rowCount; pos++) {
+            double posAspectRatio = aspectRatios[pos];
+            boolean isFullRowView = posAspectRatio < 0;
+            if (!isFullRowView) {
+                currentRowAspectRatio += posAspectRatio;
+                itemAspectRatios.add(posAspectRatio);
+            }
+
+            int currentRowWidth = calculateWidth(currentRowHeight, currentRowAspectRatio);
+            if (!isFixedHeight) {
+                currentRowHeight = calculateHeight(contentWidth, currentRowAspectRatio);
+            }
+
+            boolean isRowFull = isFixedHeight ? currentRowWidth > contentWidth : currentRowHeight <= maxRowHeight;
+            if (!isRowFull && !isFullRowView) continue;
+
+            int rowChildCount = itemAspectRatios.size();
+            int[] itemSlacks = new int[rowChildCount];
+            if (isFixedHeight) {
+                itemSlacks = distributeRowSlack(currentRowWidth, contentWidth, maxRowHeight, itemAspectRatios);
+                if (rowChildCount > 1 && !hasValidItemSlacks(itemSlacks, maxRowHeight, itemAspectRatios)) {
+                    currentRowWidth -= calculateWidth(currentRowHeight, itemAspectRatios.remove(rowChildCount - 1));
+                    rowChildCount--;
+                    pos--;
+                    itemSlacks = distributeRowSlack(currentRowWidth, contentWidth, maxRowHeight, itemAspectRatios);
+                }
+            }
+
+            if (isFullRowView && !isRowFull) {
+                currentRowHeight = (int) Math.ceil(maxRowHeight * 0.75);
+            }
+
+            StringBuilder description = new StringBuilder();
+            int availableSpace = contentWidth;
+            int firstPosition = pos - rowChildCount + (isFullRowView ? 0 : 1);
+            for (int i = 0; i < rowChildCount; i++) {
+                int itemWidth = calculateWidth(currentRowHeight, itemAspectRatios.get(i)) - itemSlacks[i];
+                itemWidth = Math.min(availableSpace, itemWidth);
+                availableSpace -= itemWidth;
+                description.append(firstPosition + i).append(':').append(itemWidth).append('x')
+                        .append(currentRowHeight).append(' ');
+            }
+            if (rowChildCount > 0) {
+                rows.add(description.toString());
+            }
+
+            if (isFullRowView) {
+                rows.add(pos + ":" + contentWidth + 'x' + calculateHeight(contentWidth, -posAspectRatio) + ' ');
+            }
+
+            itemAspectRatios.clear();
+            currentRowAspectRatio = 0.0;
+            currentRowHeight = isFixedHeight ? maxRowHeight : Integer.MAX_VALUE;
+        }
+
+        return rows.subList(0, rowCount);
+    }
+
+    private static int[] distributeRowSlack(int rowWidth, int contentWidth, int maxRowHeight,
+                                            List<Double> itemAspectRatios) {
+        int rowSlack = rowWidth - contentWidth;
+        int[] itemSlacks = new int[itemAspectRatios.size()];
+        for (int i = 0; i < itemSlacks.length; i++) {
+            double itemWidth = maxRowHeight * itemAspectRatios.get(i);
+            itemSlacks[i] = (int) (rowSlack * (itemWidth / rowWidth));
+        }
+        return itemSlacks;
+    }
+
+    private static boolean hasValidItemSlacks(int[] itemSlacks, int maxRowHeight, List<Double> itemAspectRatios) {
+        for (int i = 0; i < itemSlacks.length; i++) {
+            int itemWidth = (int) (itemAspectRatios.get(i) * maxRowHeight);
+            if ((itemWidth - itemSlacks[i]) / (double) itemWidth <= VALID_ITEM_SLACK_THRESHOLD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int calculateWidth(int itemHeight, double aspectRatio) {
+        return (int) Math.ceil(itemHeight * aspectRatio);
+    }
+
+    private static int calculateHeight(int itemWidth, double aspectRatio) {
+        return (int) Math.ceil(itemWidth / aspectRatio);
+    }
+}